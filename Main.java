@@ -1,4 +1,5 @@
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -6,6 +7,7 @@ import java.util.ArrayList;
 import core.ast.Program;
 import core.compiler.CompiledProgram;
 import core.compiler.Compiler;
+import core.compiler.FunctionCache;
 import core.env.CompiledFunction;
 import core.env.Environment;
 import core.env.NULL;
@@ -17,6 +19,10 @@ import core.is.CompiledProgramReaderWriter;
 import core.is.InstructionSet;
 
 import core.parser.Parser;
+import core.tree.Node;
+import core.tree.TreeCompiler;
+import core.vm.TierState;
+import core.vm.TypeProfile;
 import core.vm.Vm;
 
 public class Main {
@@ -38,12 +44,24 @@ public class Main {
                 continue;
             }
 
+            if (line.startsWith("tree ")) {
+                line = line.substring(5);
+                if (line.length() == 0) {
+                    System.out.println("No file input");
+                    continue;
+                }
+                runTree(line);
+                continue;
+            }
+
             if (line.startsWith("help")) {
                 System.out.println("exec <file> - 执行文件（解释器模式）\n" + 
+                "tree <file> - 执行文件（节点树模式）\n" + 
                 "run <file> - 执行二进制文件（虚拟机模式）\n" + 
                 "compile <src> [dst] - 编译文件\n" + 
                 "deasm <file> - 反汇编二进制文件\n" + 
-                "build <src> - 编译文件并执行\n");
+                "build <src> - 编译文件并执行\n" + 
+                "profile <src> - 编译文件并执行，输出各函数的执行层级、计数和类型信息\n");
                 continue;
             }
 
@@ -87,7 +105,17 @@ public class Main {
                     System.out.println("No file input");
                     continue;
                 }
-                compileAndRun(files[1]);
+                compileAndRun(files[1], false);
+                continue;
+            }
+
+            if (line.startsWith("profile ")) {
+                String[] files = line.split(" ");
+                if (files.length == 1) {
+                    System.out.println("No file input");
+                    continue;
+                }
+                compileAndRun(files[1], true);
                 continue;
             }
 
@@ -100,26 +128,28 @@ public class Main {
 
     private static void deAssemble(String path) {
         CompiledProgram compiledProgram = CompiledProgramReaderWriter.read(path);
+        if (compiledProgram == null) {
+            return;
+        }
         printInfo(compiledProgram);
     }
 
     private static void runExecutable(String path) {
         CompiledProgram compiledProgram = CompiledProgramReaderWriter.read(path);
+        if (compiledProgram == null) {
+            return;
+        }
         Vm vm = new Vm(compiledProgram);
         Obj obj = vm.run();
         System.out.println("return:" +obj.inspect());
     }
 
     private static void compileToFile(String src, String dst) {
-        String str = "";
-        try {
-            str = Files.readString(Path.of(src));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        Lexer lexer = new Lexer(str);
+        Reader reader = openSource(src);
+        Lexer lexer = reader == null ? new Lexer("") : new Lexer(reader);
         Parser parser = new Parser(lexer);
         Program program = parser.parseProgram();
+        closeSource(reader);
         if (parser.getErrors().size() > 0) {
             for (String error : parser.getErrors()) {
                 System.out.println(error);
@@ -127,6 +157,7 @@ public class Main {
             return;
         }
         Compiler compiler = new Compiler();
+        compiler.setCache(openCache(src));
         CompiledProgram compiledProgram = compiler.compile(program);
 
         if (compiledProgram.errors().size() > 0) {
@@ -143,16 +174,15 @@ public class Main {
         }
     }
 
-    private static void compileAndRun(String path) {
-        String str = "";
-        try {
-            str = Files.readString(Path.of(path));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        Lexer lexer = new Lexer(str);
+    /**
+     * @param profile 执行后是否输出各函数的计数和类型信息
+     */
+    private static void compileAndRun(String path, boolean profile) {
+        Reader reader = openSource(path);
+        Lexer lexer = reader == null ? new Lexer("") : new Lexer(reader);
         Parser parser = new Parser(lexer);
         Program program = parser.parseProgram();
+        closeSource(reader);
         if (parser.getErrors().size() > 0) {
             for (String error : parser.getErrors()) {
                 System.out.println(error);
@@ -160,6 +190,7 @@ public class Main {
             return;
         }
         Compiler compiler = new Compiler();
+        compiler.setCache(openCache(path));
         CompiledProgram compiledProgram = compiler.compile(program);
 
         if (compiledProgram.errors().size() > 0) {
@@ -172,6 +203,40 @@ public class Main {
         Obj obj = vm.run();
         
         System.out.println("return:" +obj.inspect());
+        if (profile) {
+            printProfile(compiledProgram, vm);
+        }
+    }
+
+    /**
+     * 输出主程序和各函数的执行层级、调用次数、回边次数、退优化次数，以及收集到的类型信息
+     */
+    private static void printProfile(CompiledProgram compiledProgram, Vm vm) {
+        System.out.println("\nProfile:");
+        printProfile("main", vm.mainFunction());
+        ArrayList<Obj> consts = compiledProgram.consts();
+        for (int i = 0; i < consts.size(); i++) {
+            if (consts.get(i).type() == ObjType.CompiledFunction) {
+                printProfile("%03d".formatted(i), (CompiledFunction) consts.get(i));
+            }
+        }
+    }
+
+    private static void printProfile(String name, CompiledFunction cf) {
+        TierState state = TierState.of(cf);
+        System.out.println("%s: tier=%s calls=%d backEdges=%d deopts=%d"
+                .formatted(name, state.tier(), state.calls(), state.backEdges(), state.deopts()));
+        TypeProfile profile = state.profile();
+        if (profile == null) {
+            return;
+        }
+        byte[] code = cf.getInstructions();
+        for (int ip = 0; ip < code.length; ip += InstructionSet.lengthOf(code[ip])) {
+            if (profile.types(ip) != 0) {
+                System.out.println("\t%04d %s %s".formatted(ip, InstructionSet.opcodeOf(code[ip]),
+                        TypeProfile.describe(profile.types(ip))));
+            }
+        }
     }
 
     private static void printInfo(CompiledProgram compiledProgram) {
@@ -209,16 +274,11 @@ public class Main {
      * @param path 文件路径
      */
     private static void runFile(String path) {
-        String str = "";
-        try {
-            str = Files.readString(Path.of(path));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        Lexer lexer = new Lexer(str);
+        Reader reader = openSource(path);
+        Lexer lexer = reader == null ? new Lexer("") : new Lexer(reader);
         Parser parser = new Parser(lexer);
         Program program = parser.parseProgram();
+        closeSource(reader);
 
         if (parser.getErrors().size() > 0) {
             for (String error : parser.getErrors()) {
@@ -234,6 +294,74 @@ public class Main {
         System.out.println("Program finished with result:" + obj.inspect());
     }
 
+    /**
+     * 把文件内的代码转换为节点树后执行，并输出结果
+     * @param path 文件路径
+     */
+    private static void runTree(String path) {
+        Reader reader = openSource(path);
+        Lexer lexer = reader == null ? new Lexer("") : new Lexer(reader);
+        Parser parser = new Parser(lexer);
+        Program program = parser.parseProgram();
+        closeSource(reader);
+
+        if (parser.getErrors().size() > 0) {
+            for (String error : parser.getErrors()) {
+                System.out.println(error);
+            }
+            return;
+        }
+        Environment env = new Environment();
+        Node node = new TreeCompiler().compile(program, env);
+
+        Obj obj = node.execute(env);
+
+        System.out.println("Program finished with result:" + obj.inspect());
+    }
+
+    /**
+     * 以流的方式打开源文件，词法分析器边读边分析，不再一次性读入整个文件
+     * @param path 文件路径
+     * @return 文件输入流，打开失败时返回 null
+     */
+    private static Reader openSource(String path) {
+        try {
+            return Files.newBufferedReader(Path.of(path));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 顶层函数编译缓存的目录，由系统属性 cho.cache.dir 指定，默认为源文件所在目录下的 .chocache，
+     * 指定为 none 时不使用缓存
+     * @param src 源文件路径
+     * @return 缓存，不使用时返回 null
+     */
+    private static FunctionCache openCache(String src) {
+        String dir = System.getProperty("cho.cache.dir");
+        if ("none".equals(dir)) {
+            return null;
+        }
+        if (dir == null) {
+            Path parent = Path.of(src).toAbsolutePath().getParent();
+            return new FunctionCache(parent.resolve(".chocache"));
+        }
+        return new FunctionCache(Path.of(dir));
+    }
+
+    private static void closeSource(Reader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (IOException e) {
+            System.out.println("close file error: " + e.getMessage());
+        }
+    }
+
     /**
      *  读取控制台输入，并执行
      */
@@ -241,7 +369,7 @@ public class Main {
         Environment env = new Environment();
         Evaluator evaluator = new Evaluator();
         java.util.Scanner scanner = new java.util.Scanner(System.in);
-        Obj obj = new NULL();
+        Obj obj = NULL.INSTANCE;
         while (true) {
             System.out.print(">>> ");
             String line = scanner.nextLine();
@@ -0,0 +1,63 @@
+#!/bin/bash
+# 对比两个提交的基准测试结果
+#
+# 用法: bench/compare.sh <base> [head] [JMH 参数...]
+#   base  作为基线的提交（如 HEAD~1、main）
+#   head  要对比的提交，默认为当前工作区
+#   其余参数原样传给 JMH，如 VmBenchmark -p program=fib
+#
+# 两边各自构建 benchmarks.jar，用同样的参数运行，结果保存为 CSV，
+# 最后按 (基准, 参数) 对齐输出两边的分数和比值（head / base，平均时间越小越好）。
+set -e
+
+if [ $# -lt 1 ]; then
+    sed -n '2,10p' "$0"
+    exit 1
+fi
+
+root=$(git rev-parse --show-toplevel)
+base=$1
+shift
+head=
+if [ $# -gt 0 ] && git rev-parse --verify -q "$1^{commit}" > /dev/null; then
+    head=$1
+    shift
+fi
+
+work=$(mktemp -d)
+trap 'git -C "$root" worktree remove --force "$work/base" > /dev/null 2>&1 || true;
+      git -C "$root" worktree remove --force "$work/head" > /dev/null 2>&1 || true;
+      rm -rf "$work"' EXIT
+
+build() {
+    git -C "$root" worktree add -q --detach "$2" "$1"
+    (cd "$2" && mvn -B -q package -DskipTests)
+}
+
+build "$base" "$work/base"
+if [ -n "$head" ]; then
+    build "$head" "$work/head"
+    head_dir=$work/head
+else
+    (cd "$root" && mvn -B -q package -DskipTests)
+    head_dir=$root
+fi
+
+java -jar "$work/base/bench/target/benchmarks.jar" -rf csv -rff "$work/base.csv" "$@"
+java -jar "$head_dir/bench/target/benchmarks.jar" -rf csv -rff "$work/head.csv" "$@"
+
+awk -F',' '
+    FNR == 1 { next }
+    {
+        key = $1
+        for (i = 8; i <= NF; i++) key = key "," $i
+        gsub(/"/, "", key)
+    }
+    NR == FNR { base[key] = $5; unit[key] = $7; next }
+    key in base {
+        printf "%-60s %12.3f %12.3f %8.2fx %s\n", key, base[key], $5, $5 / base[key], unit[key]
+    }
+' "$work/base.csv" "$work/head.csv" | sed 's/"//g' | {
+    printf "%-60s %12s %12s %9s\n" "benchmark" "base" "head" "head/base"
+    cat
+}
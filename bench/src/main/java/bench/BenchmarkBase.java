@@ -0,0 +1,27 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 所有阶段共用的 JMH 配置，保证不同阶段、不同提交之间的数据可以直接对比
+ * <p> 用法 </p>
+ * <pre>
+ *   mvn -B package
+ *   java -jar bench/target/benchmarks.jar            // 全部阶段
+ *   java -jar bench/target/benchmarks.jar VmBenchmark // 只测虚拟机
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public abstract class BenchmarkBase {
+}
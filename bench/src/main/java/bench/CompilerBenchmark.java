@@ -0,0 +1,14 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import core.compiler.CompiledProgram;
+import core.compiler.Compiler;
+
+public class CompilerBenchmark extends BenchmarkBase {
+
+    @Benchmark
+    public CompiledProgram compile(CorpusState state) {
+        return new Compiler().compile(state.ast);
+    }
+}
@@ -0,0 +1,135 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * 基准测试用的 Cho 程序语料，所有程序都由固定种子生成，保证每次运行的输入完全一致
+ * <p> 目前包含: </p>
+ * <ul>
+ *   <li>fib - 递归斐波那契，主要压测函数调用</li>
+ *   <li>bubble - 冒泡排序，主要压测数组读写和循环</li>
+ *   <li>wordcount - 单词计数，主要压测哈希表读写</li>
+ *   <li>closures - 大量创建和调用闭包</li>
+ * </ul>
+ */
+public class Corpus {
+
+    public static final String[] NAMES = { "fib", "bubble", "wordcount", "closures" };
+
+    private static final long SEED = 0x43484FL;
+
+    public static String source(String name) {
+        switch (name) {
+            case "fib":
+                return fib(20);
+            case "bubble":
+                return bubbleSort(300);
+            case "wordcount":
+                return wordCount(64, 500, 20);
+            case "closures":
+                return closures(10000);
+            default:
+                throw new IllegalArgumentException("unknown corpus program: " + name);
+        }
+    }
+
+    public static String fib(int n) {
+        return "var fib = function (n) {\n"
+                + "    if (n < 2) { return n; }\n"
+                + "    return fib(n - 1) + fib(n - 2);\n"
+                + "};\n"
+                + "fib(" + n + ");\n";
+    }
+
+    public static String bubbleSort(int n) {
+        return "var makeArray = function (n) {\n"
+                + "    var arr = [];\n"
+                + "    for (var i = 0; i < n; i = i + 1) {\n"
+                + "        append(arr, n - i);\n"
+                + "    }\n"
+                + "    return arr;\n"
+                + "};\n"
+                + "var bubbleSort = function (arr) {\n"
+                + "    var length = len(arr);\n"
+                + "    for (var i = 0; i < length; i = i + 1) {\n"
+                + "        var swaped = false;\n"
+                + "        for (var j = 0; j < length - i - 1; j = j + 1) {\n"
+                + "            if (arr[j] > arr[j + 1]) {\n"
+                + "                var temp = arr[j];\n"
+                + "                arr[j] = arr[j + 1];\n"
+                + "                arr[j + 1] = temp;\n"
+                + "                swaped = true;\n"
+                + "            }\n"
+                + "        }\n"
+                + "        if (!swaped) {\n"
+                + "            break;\n"
+                + "        }\n"
+                + "    }\n"
+                + "    return arr;\n"
+                + "};\n"
+                + "bubbleSort(makeArray(" + n + "));\n";
+    }
+
+    public static String wordCount(int vocabSize, int docSize, int rounds) {
+        Random random = new Random(SEED);
+        ArrayList<String> vocab = new ArrayList<>();
+        String[] syllables = { "cho", "ka", "ri", "mo", "zen", "ta", "lu", "vi" };
+        while (vocab.size() < vocabSize) {
+            StringBuilder word = new StringBuilder();
+            int parts = 2 + random.nextInt(3);
+            for (int i = 0; i < parts; i++) {
+                word.append(syllables[random.nextInt(syllables.length)]);
+            }
+            if (!vocab.contains(word.toString())) {
+                vocab.add(word.toString());
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("var words = [");
+        for (int i = 0; i < docSize; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('"').append(vocab.get(random.nextInt(vocabSize))).append('"');
+        }
+        sb.append("];\n");
+        sb.append("var count = function (words, counts, rounds) {\n"
+                + "    for (var r = 0; r < rounds; r = r + 1) {\n"
+                + "        for (var i = 0; i < len(words); i = i + 1) {\n"
+                + "            counts[words[i]] = counts[words[i]] + 1;\n"
+                + "        }\n"
+                + "    }\n"
+                + "    return counts;\n"
+                + "};\n");
+        sb.append("count(words, {");
+        for (int i = 0; i < vocabSize; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('"').append(vocab.get(i)).append("\": 0");
+        }
+        sb.append("}, ").append(rounds).append(");\n");
+        return sb.toString();
+    }
+
+    public static String closures(int n) {
+        return "var compose = function (f, g) {\n"
+                + "    return function (x) { return f(g(x)); };\n"
+                + "};\n"
+                + "var makeAdder = function (n) {\n"
+                + "    return function (x) { return x + n; };\n"
+                + "};\n"
+                + "var run = function (n) {\n"
+                + "    var acc = 0;\n"
+                + "    for (var i = 0; i < n; i = i + 1) {\n"
+                + "        var add = makeAdder(i);\n"
+                + "        var twice = compose(add, add);\n"
+                + "        acc = twice(acc) - i - i + 1;\n"
+                + "    }\n"
+                + "    return acc;\n"
+                + "};\n"
+                + "run(" + n + ");\n";
+    }
+}
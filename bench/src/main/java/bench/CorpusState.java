@@ -0,0 +1,58 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import core.ast.Program;
+import core.compiler.CompiledProgram;
+import core.compiler.Compiler;
+import core.is.CompiledProgramReaderWriter;
+import core.lexer.Lexer;
+import core.parser.Parser;
+
+/**
+ * 每个阶段的输入都在这里预先准备好，基准方法只测量自己负责的那一个阶段
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+
+    @Param({ "fib", "bubble", "wordcount", "closures" })
+    public String program;
+
+    public String source;
+    public Program ast;
+    public CompiledProgram compiled;
+    public Path binary;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        source = Corpus.source(program);
+
+        Parser parser = new Parser(new Lexer(source));
+        ast = parser.parseProgram();
+        if (parser.getErrors().size() > 0) {
+            throw new IllegalStateException(program + ": " + parser.getErrors());
+        }
+
+        compiled = new Compiler().compile(ast);
+        if (compiled.errors().size() > 0) {
+            throw new IllegalStateException(program + ": " + compiled.errors());
+        }
+
+        binary = Files.createTempFile("cho-bench-" + program, ".cho");
+        CompiledProgramReaderWriter.write(compiled, binary.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(binary);
+    }
+}
@@ -0,0 +1,15 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import core.env.Environment;
+import core.env.Obj;
+import core.eval.Evaluator;
+
+public class EvaluatorBenchmark extends BenchmarkBase {
+
+    @Benchmark
+    public Obj eval(CorpusState state) {
+        return new Evaluator().eval(state.ast, new Environment());
+    }
+}
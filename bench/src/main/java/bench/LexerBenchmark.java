@@ -0,0 +1,24 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import core.lexer.Lexer;
+import core.token.TokenType;
+
+public class LexerBenchmark extends BenchmarkBase {
+
+    @Benchmark
+    public int nextToken(CorpusState state) {
+        Lexer lexer = new Lexer(state.source);
+        int count = 0;
+        while (lexer.nextToken().type() != TokenType.EOF) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int tokenize(CorpusState state) {
+        return new Lexer(state.source).tokenize().size();
+    }
+}
@@ -0,0 +1,20 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import core.ast.Program;
+import core.lexer.Lexer;
+import core.parser.Parser;
+
+public class ParserBenchmark extends BenchmarkBase {
+
+    @Benchmark
+    public Program parseProgram(CorpusState state) {
+        return new Parser(new Lexer(state.source)).parseProgram();
+    }
+
+    @Benchmark
+    public Program parsePacked(CorpusState state) {
+        return new Parser(new Lexer(state.source).tokenize()).parseProgram();
+    }
+}
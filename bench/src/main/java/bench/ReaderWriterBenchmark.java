@@ -0,0 +1,41 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import core.compiler.CompiledProgram;
+import core.is.CompiledProgramReaderWriter;
+
+@State(Scope.Thread)
+public class ReaderWriterBenchmark extends BenchmarkBase {
+
+    private Path out;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        out = Files.createTempFile("cho-bench-write", ".cho");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(out);
+    }
+
+    @Benchmark
+    public CompiledProgram read(CorpusState state) {
+        return CompiledProgramReaderWriter.read(state.binary.toString());
+    }
+
+    @Benchmark
+    public void write(CorpusState state) throws IOException {
+        CompiledProgramReaderWriter.write(state.compiled, out.toString());
+    }
+}
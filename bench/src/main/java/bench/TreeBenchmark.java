@@ -0,0 +1,16 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import core.env.Environment;
+import core.env.Obj;
+import core.tree.TreeCompiler;
+
+public class TreeBenchmark extends BenchmarkBase {
+
+    @Benchmark
+    public Obj execute(CorpusState state) {
+        Environment env = new Environment();
+        return new TreeCompiler().compile(state.ast, env).execute(env);
+    }
+}
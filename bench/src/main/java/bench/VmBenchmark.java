@@ -0,0 +1,14 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import core.env.Obj;
+import core.vm.Vm;
+
+public class VmBenchmark extends BenchmarkBase {
+
+    @Benchmark
+    public Obj run(CorpusState state) {
+        return new Vm(state.compiled).run();
+    }
+}
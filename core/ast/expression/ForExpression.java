@@ -5,13 +5,20 @@ import core.ast.statement.BlockStatement;
 import core.ast.statement.Statement;
 import core.token.Token;
 
+import java.util.HashMap;
+
 public class ForExpression extends Expression {
     private Token token;
     private Statement init;
     private Expression condition;
     private Statement increment;
     private BlockStatement body;
-    
+
+    /**
+     * 解析得到的作用域：循环中定义的变量及其下标
+     */
+    private HashMap<String, Integer> scope;
+
     public ForExpression(Token t) {
         this.token = t;
     }
@@ -48,6 +55,14 @@ public class ForExpression extends Expression {
         return body;
     }
 
+    public void setScope(HashMap<String, Integer> scope) {
+        this.scope = scope;
+    }
+
+    public HashMap<String, Integer> getScope() {
+        return scope;
+    }
+
     @Override
     public ASTNodeType type() {
         return ASTNodeType.ForExpression;
@@ -5,6 +5,7 @@ import core.ast.statement.BlockStatement;
 import core.token.Token;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 public class FunctionLiteral extends Expression {
     private Token token;
@@ -12,6 +13,11 @@ public class FunctionLiteral extends Expression {
     private BlockStatement body;
     private String name;
 
+    /**
+     * 解析得到的作用域：参数和函数体中定义的变量及其下标
+     */
+    private HashMap<String, Integer> scope;
+
     public FunctionLiteral(Token t) {
         token = t;
     }
@@ -40,6 +46,14 @@ public class FunctionLiteral extends Expression {
         return name;
     }
 
+    public void setScope(HashMap<String, Integer> scope) {
+        this.scope = scope;
+    }
+
+    public HashMap<String, Integer> getScope() {
+        return scope;
+    }
+
     @Override
     public String toString() {
         String str = "";
@@ -3,6 +3,7 @@ package core.ast.expression;
 import core.ast.base.ASTNodeType;
 import core.token.Token;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 public class HashLiteral extends Expression {
     private Token token;
@@ -10,7 +11,7 @@ public class HashLiteral extends Expression {
 
     public HashLiteral(Token t) {
         token = t;
-        pairs = new HashMap<>();
+        pairs = new LinkedHashMap<>();
     }
 
     public void setPairs(HashMap<Expression, Expression> pairs) {
@@ -7,8 +7,16 @@ public class Identifier extends Expression {
     private Token token;
     private String value;
 
+    /**
+     * 解析得到的词法地址：变量所在环境相对当前环境的层数和变量在环境中的下标，未解析时为 -1
+     */
+    private int depth = -1;
+    private int slot = -1;
+
     public Identifier(Identifier identifier) {
         this.value = identifier.value;
+        this.depth = identifier.depth;
+        this.slot = identifier.slot;
     }
 
     public Identifier(Token token,String value) {
@@ -20,6 +28,19 @@ public class Identifier extends Expression {
         return value;
     }
 
+    public void resolve(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
     @Override
     public String toString() {
         return value;
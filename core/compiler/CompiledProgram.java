@@ -2,11 +2,24 @@ package core.compiler;
 
 import java.util.ArrayList;
 
+import core.env.CompiledFunction;
 import core.env.Obj;
 
 public class CompiledProgram {
+    /**
+     * 按下标解码常量，从 .cho 文件加载时常量在第一次使用时才解码
+     */
+    public interface ConstantLoader {
+        int size();
+
+        Obj load(int index);
+    }
+
     private ArrayList<Byte> instructions;
+    private byte[] code;
     private ArrayList<Obj> consts;
+    private ConstantLoader loader;
+    private Obj[] loaded;
     private ArrayList<String> errors;
     public CompiledProgram(ArrayList<Byte> instructions, ArrayList<Obj> consts, ArrayList<String> errors) {
         this.instructions = instructions;
@@ -14,11 +27,67 @@ public class CompiledProgram {
         this.errors = errors;
     }
 
+    /**
+     * @param code 主程序字节码
+     * @param loader 常量解码器
+     */
+    public CompiledProgram(byte[] code, ConstantLoader loader) {
+        this.code = code;
+        this.loader = loader;
+        this.loaded = new Obj[loader.size()];
+        this.errors = new ArrayList<>();
+    }
+
     public ArrayList<Byte> instructions() {
+        if (instructions == null) {
+            instructions = new ArrayList<>(code.length);
+            for (byte b : code) {
+                instructions.add(b);
+            }
+        }
         return instructions;
     }
 
+    /**
+     * 主程序字节码
+     */
+    public byte[] code() {
+        if (code == null) {
+            return CompiledFunction.toBytes(instructions);
+        }
+        return code;
+    }
+
+    public int constCount() {
+        return consts != null ? consts.size() : loaded.length;
+    }
+
+    /**
+     * 获取第 index 个常量，延迟加载的常量在此时解码
+     */
+    public Obj constant(int index) {
+        if (consts != null) {
+            return consts.get(index);
+        }
+        Obj c = loaded[index];
+        if (c == null) {
+            c = loader.load(index);
+            loaded[index] = c;
+        }
+        return c;
+    }
+
+    /**
+     * 全部常量，延迟加载的常量会全部解码
+     */
     public ArrayList<Obj> consts() {
+        if (consts == null) {
+            ArrayList<Obj> all = new ArrayList<>(loaded.length);
+            for (int i = 0; i < loaded.length; i++) {
+                all.add(constant(i));
+            }
+            return all;
+        }
         return consts;
     }
 
@@ -1,5 +1,6 @@
 package core.compiler;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Stack;
@@ -41,7 +42,20 @@ import core.is.InstructionSet;
 import core.is.Opcode;
 
 public class Compiler {
+    /**
+     * Load 指令的常量下标只有两个字节
+     */
+    private static final int MAX_CONSTANTS = 1 << 16;
+
     private ArrayList<Obj> consts = new ArrayList<>();
+
+    /**
+     * 常量池去重表，相同的整数、字符串、函数字节码只保存一份，
+     * 同一字符串常量在运行时是同一个 Str 对象
+     */
+    private HashMap<Integer, Integer> intConsts = new HashMap<>();
+    private HashMap<String, Integer> strConsts = new HashMap<>();
+    private HashMap<String, Integer> funcConsts = new HashMap<>();
     private Stack<CompileScope> scopes = new Stack<>();
 
     private InstructionSet is = new InstructionSet();
@@ -51,21 +65,94 @@ public class Compiler {
 
     private ArrayList<String> errors = new ArrayList<>();
 
+    /**
+     * 推迟到程序末尾并行编译的顶层函数，按出现顺序排列
+     */
+    private ArrayList<TopLevelFunction> deferred = new ArrayList<>();
+
+    /**
+     * 顶层函数编译结果的磁盘缓存，为 null 时不使用缓存
+     */
+    private FunctionCache cache = null;
+
     public Compiler() {
         scopes.push(new CompileScope(0));
         gen(Opcode.Allocate, 0);
     }
 
+    /**
+     * 设置顶层函数编译结果的缓存，未改动的函数直接复用上次的字节码
+     * @param cache 缓存，null 表示不使用
+     */
+    public void setCache(FunctionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * 用于在其他线程中编译单个顶层函数，常量放入自己的常量池，合并时再重新链接
+     * @param globals 全局符号表在该函数定义处的视图
+     */
+    private Compiler(SymbolTable globals) {
+        scopes.push(new CompileScope(0));
+        st = globals;
+    }
+
+    /**
+     * 顶层函数的编译任务及结果
+     */
+    private static class TopLevelFunction {
+        FunctionLiteral fl;
+        SymbolTable globals;
+        int closurePos;
+        int errorPos;
+
+        CompiledFunction cf;
+        ArrayList<Obj> consts;
+        ArrayList<String> errors;
+
+        TopLevelFunction(FunctionLiteral fl, SymbolTable globals, int closurePos, int errorPos) {
+            this.fl = fl;
+            this.globals = globals;
+            this.closurePos = closurePos;
+            this.errorPos = errorPos;
+        }
+
+        void compile(FunctionCache cache) {
+            String key = null;
+            if (cache != null) {
+                key = FunctionCache.fingerprint(fl);
+                FunctionCache.Entry entry = cache.load(key);
+                if (entry != null && entry.matches(globals)) {
+                    cf = entry.cf;
+                    consts = entry.consts;
+                    errors = new ArrayList<>();
+                    return;
+                }
+            }
+
+            Compiler worker = new Compiler(globals);
+            worker.compileFunctionBody(fl);
+            cf = worker.leaveScope();
+            consts = worker.consts;
+            errors = worker.errors;
+
+            if (cache != null && errors.isEmpty()) {
+                cache.store(key, cf, consts, globals.lookups());
+            }
+        }
+    }
+
     public CompiledProgram compile(ASTNode ast) {
         int constIndex;
-        Obj tempObj;
         switch (ast.type()) {
             case Program:
                 Program program = (Program) ast;
                 for (int i = 0; i < program.getStatements().size(); i++) {
                     compile(program.getStatements().get(i));
                 }
+                compileDeferred();
                 replace(0, 3, is.encode(Opcode.Allocate, st.size()));
+                curScope().setInstructions(Peephole.optimize(curInstructions()));
                 break;
             case BlockStatement:
                 BlockStatement bs = (BlockStatement) ast;
@@ -82,7 +169,12 @@ public class Compiler {
                 VarStatement vs = (VarStatement) ast;
                 String idname = vs.getIdentifier().getValue();
                 Symbol s = st.define(idname);
-                compile(vs.getValue());
+                if (s.scope().equals("global") && vs.getValue() != null
+                        && vs.getValue().type() == ASTNodeType.FunctionLiteral) {
+                    deferFunction((FunctionLiteral) vs.getValue());
+                } else {
+                    compile(vs.getValue());
+                }
                 
                 if (s.scope().equals("global")) {
                     gen(Opcode.SetGlobal, s.index());
@@ -107,8 +199,7 @@ public class Compiler {
                 break;
             case IntegerLiteral:
                 IntegerLiteral il = (IntegerLiteral) ast;
-                tempObj = new Int(il.getValue());
-                constIndex = addConstant(tempObj);
+                constIndex = addIntConstant(il.getValue());
                 gen(Opcode.Load, constIndex);
                 break;
             case BooleanLiteral:
@@ -121,8 +212,7 @@ public class Compiler {
                 break;
             case StringLiteral:
                 StringLiteral  sl = (StringLiteral) ast;
-                tempObj = new Str(sl.getValue());
-                constIndex = addConstant(tempObj);
+                constIndex = addStrConstant(sl.getValue());
                 gen(Opcode.Load, constIndex);
                 break;
             case ArrayLiteral:
@@ -136,9 +226,10 @@ public class Compiler {
             case HashLiteral:
                 HashLiteral hl = (HashLiteral) ast;
                 HashMap<Expression,Expression> hm = hl.getPairs();
-                for (Expression exp : hm.keySet()) {
-                    compile(hm.get(exp));
-                    compile(exp);
+                ArrayList<Expression> keys = new ArrayList<>(hm.keySet());
+                for (int i = keys.size() - 1; i >= 0; i--) {
+                    compile(hm.get(keys.get(i)));
+                    compile(keys.get(i));
                 }
                 gen(Opcode.Hash, hm.size());
                 break;
@@ -216,7 +307,7 @@ public class Compiler {
     private CompiledFunction leaveScope() {
         CompileScope scope = scopes.pop();
         st = st.outer();
-        CompiledFunction cf = new CompiledFunction(scope.instructions(), scope.params());
+        CompiledFunction cf = new CompiledFunction(Peephole.optimize(scope.instructions()), scope.params());
         return cf;
     }
 
@@ -264,10 +355,42 @@ public class Compiler {
     }
 
     private int addConstant(Obj obj) {
+        if (consts.size() == MAX_CONSTANTS) {
+            addError("错误： 常量数量超过上限 " + MAX_CONSTANTS);
+            return 0;
+        }
         consts.add(obj);
         return consts.size() - 1;
     }
 
+    private int addIntConstant(int val) {
+        Integer index = intConsts.get(val);
+        if (index == null) {
+            index = addConstant(new Int(val));
+            intConsts.put(val, index);
+        }
+        return index;
+    }
+
+    private int addStrConstant(String val) {
+        Integer index = strConsts.get(val);
+        if (index == null) {
+            index = addConstant(new Str(val));
+            strConsts.put(val, index);
+        }
+        return index;
+    }
+
+    private int addFunctionConstant(CompiledFunction cf) {
+        String key = cf.paramCount() + ":" + new String(cf.getInstructions(), StandardCharsets.ISO_8859_1);
+        Integer index = funcConsts.get(key);
+        if (index == null) {
+            index = addConstant(cf);
+            funcConsts.put(key, index);
+        }
+        return index;
+    }
+
 
     private int gen(Opcode code, int ... args) {
         int index = curInstructions().size();
@@ -339,6 +462,24 @@ public class Compiler {
     }
 
     private void genFunction(FunctionLiteral fl) {
+        compileFunctionBody(fl);
+
+        ArrayList<Symbol> frees = st.frees();
+
+        CompiledFunction cf = leaveScope();
+
+        for (int i = 0; i < frees.size(); i++) {
+            loadVars(frees.get(i).name());
+        }
+
+        int index = addFunctionConstant(cf);
+        gen(Opcode.Closure, index, frees.size()); 
+    }
+
+    /**
+     * 进入新的作用域并编译函数体，调用者负责离开作用域
+     */
+    private void compileFunctionBody(FunctionLiteral fl) {
         enterNewScope(fl.getParameters().size());
         
         if (fl.getName() != null) {
@@ -360,17 +501,83 @@ public class Compiler {
         }
 
         replace(aindex, 3, is.encode(Opcode.Allocate, st.size() - fl.getParameters().size()));
+    }
 
-        ArrayList<Symbol> frees = st.frees();
+    /**
+     * 顶层函数只引用全局变量和内建函数，没有自由变量，可以独立编译。
+     * 先生成一个常量下标待定的 Closure 指令，记下当时的全局符号表视图，
+     * 等整个程序编译完后再统一编译
+     */
+    private void deferFunction(FunctionLiteral fl) {
+        int pos = gen(Opcode.Closure, 0, 0);
+        deferred.add(new TopLevelFunction(fl, st.snapshot(), pos, errors.size()));
+    }
 
-        CompiledFunction cf = leaveScope();
+    /**
+     * 在 ForkJoin 线程池中并行编译推迟的顶层函数，然后按出现顺序依次把各自的常量
+     * 合并到常量池、回填 Closure 指令的常量下标、把错误信息插回原来的位置，
+     * 因此结果与线程调度无关
+     */
+    private void compileDeferred() {
+        if (deferred.isEmpty()) {
+            return;
+        }
+        if (deferred.size() == 1) {
+            deferred.get(0).compile(cache);
+        } else {
+            deferred.parallelStream().forEach(f -> f.compile(cache));
+        }
 
-        for (int i = 0; i < frees.size(); i++) {
-            loadVars(frees.get(i).name());
+        for (int i = deferred.size() - 1; i >= 0; i--) {
+            TopLevelFunction f = deferred.get(i);
+            errors.addAll(f.errorPos, f.errors);
         }
+        for (TopLevelFunction f : deferred) {
+            int[] relocation = new int[f.consts.size()];
+            for (int i = 0; i < relocation.length; i++) {
+                relocation[i] = relinkConstant(f.consts.get(i), relocation);
+            }
+            int index = addFunctionConstant(relink(f.cf, relocation));
+            replace(f.closurePos, 4, is.encode(Opcode.Closure, index, 0));
+        }
+        deferred.clear();
+    }
 
-        int index = addConstant(cf);
-        gen(Opcode.Closure, index, frees.size()); 
+    private int relinkConstant(Obj obj, int[] relocation) {
+        if (obj instanceof Int) {
+            return addIntConstant(((Int) obj).getValue());
+        }
+        if (obj instanceof Str) {
+            return addStrConstant(((Str) obj).getValue());
+        }
+        return addFunctionConstant(relink((CompiledFunction) obj, relocation));
+    }
+
+    /**
+     * 按新的常量下标改写函数字节码中引用常量的操作数
+     */
+    private static CompiledFunction relink(CompiledFunction cf, int[] relocation) {
+        byte[] code = cf.getInstructions().clone();
+        for (int ip = 0; ip < code.length; ip += InstructionSet.lengthOf(code[ip])) {
+            switch (InstructionSet.opcodeOf(code[ip])) {
+                case Load:
+                case Closure:
+                    relinkOperand(code, ip + 1, relocation);
+                    break;
+                case LtLocalConstJf:
+                    relinkOperand(code, ip + 3, relocation);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new CompiledFunction(code, cf.paramCount());
+    }
+
+    private static void relinkOperand(byte[] code, int pos, int[] relocation) {
+        int index = relocation[((code[pos] & 0xFF) << 8) | (code[pos + 1] & 0xFF)];
+        code[pos] = (byte) (index >> 8);
+        code[pos + 1] = (byte) index;
     }
 
     private void genBreak(BreakStatement brs) {
@@ -0,0 +1,330 @@
+package core.compiler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Map;
+
+import core.ast.base.ASTNode;
+import core.ast.expression.ArrayLiteral;
+import core.ast.expression.AssignExpression;
+import core.ast.expression.BooleanLiteral;
+import core.ast.expression.CallExpression;
+import core.ast.expression.Expression;
+import core.ast.expression.ForExpression;
+import core.ast.expression.FunctionLiteral;
+import core.ast.expression.HashLiteral;
+import core.ast.expression.Identifier;
+import core.ast.expression.IfExpression;
+import core.ast.expression.IndexExpression;
+import core.ast.expression.InfixExpression;
+import core.ast.expression.IntegerLiteral;
+import core.ast.expression.PrefixExpression;
+import core.ast.expression.StringLiteral;
+import core.ast.expression.WhileExpression;
+import core.ast.statement.BlockStatement;
+import core.ast.statement.ExpressionStatement;
+import core.ast.statement.ReturnStatement;
+import core.ast.statement.Statement;
+import core.ast.statement.VarStatement;
+import core.compiler.utils.Symbol;
+import core.compiler.utils.SymbolTable;
+import core.env.CompiledFunction;
+import core.env.Int;
+import core.env.Obj;
+import core.env.Str;
+
+/**
+ * 顶层函数编译结果的磁盘缓存
+ * <p> 以函数语法树的摘要为键，每个函数一个文件，保存函数字节码、它用到的常量，
+ * 以及编译时解析到的全局变量和下标。只有这些全局变量在当前程序中仍解析到同样的下标时
+ * 才复用缓存的结果，否则重新编译并覆盖缓存。</p>
+ * <p> 缓存只是加速手段，读写失败都按未命中处理。</p>
+ */
+public class FunctionCache {
+    /**
+     * 缓存格式版本，编译器生成的字节码有变化时需要修改，使旧缓存全部失效
+     */
+    private static final int VERSION = 2;
+
+    private static final int MAGIC = 0x43484F46;
+
+    private final Path dir;
+
+    public FunctionCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 缓存项：函数字节码、它自己的常量池、依赖的全局变量
+     */
+    static class Entry {
+        CompiledFunction cf;
+        ArrayList<Obj> consts;
+        ArrayList<String> globals = new ArrayList<>();
+        ArrayList<Integer> indices = new ArrayList<>();
+
+        /**
+         * 依赖的全局变量在当前程序的全局符号表视图中是否仍解析到同样的下标
+         */
+        boolean matches(SymbolTable view) {
+            for (int i = 0; i < globals.size(); i++) {
+                Symbol s = view.get(globals.get(i));
+                if (s == null || !s.scope().equals("global") || s.index() != indices.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 计算函数语法树的摘要，结构或任何字面值不同的函数摘要都不同
+     * @return 十六进制摘要
+     */
+    public static String fingerprint(FunctionLiteral fl) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(VERSION).append('|').append(fl.getName()).append('|');
+        digest(fl, sb);
+        byte[] hash = md.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 把语法树按 (类型 值 子节点...) 的形式写出，字符串和标识符带长度前缀以免混淆
+     */
+    private static void digest(ASTNode node, StringBuilder sb) {
+        if (node == null) {
+            sb.append('_');
+            return;
+        }
+        sb.append('(').append(node.type().ordinal());
+        switch (node.type()) {
+            case BlockStatement:
+                for (Statement s : ((BlockStatement) node).getStatements()) {
+                    digest(s, sb);
+                }
+                break;
+            case ExpressionStatement:
+                digest(((ExpressionStatement) node).getExpression(), sb);
+                break;
+            case VarStatement:
+                digest(((VarStatement) node).getIdentifier(), sb);
+                digest(((VarStatement) node).getValue(), sb);
+                break;
+            case ReturnStatement:
+                digest(((ReturnStatement) node).getRet(), sb);
+                break;
+            case Identifier:
+                text(((Identifier) node).getValue(), sb);
+                break;
+            case IntegerLiteral:
+                sb.append(' ').append(((IntegerLiteral) node).getValue());
+                break;
+            case BooleanLiteral:
+                sb.append(' ').append(((BooleanLiteral) node).getValue());
+                break;
+            case StringLiteral:
+                text(((StringLiteral) node).getValue(), sb);
+                break;
+            case PrefixExpression:
+                text(((PrefixExpression) node).getOp(), sb);
+                digest(((PrefixExpression) node).getRight(), sb);
+                break;
+            case InfixExpression:
+                text(((InfixExpression) node).getOp(), sb);
+                digest(((InfixExpression) node).getLeft(), sb);
+                digest(((InfixExpression) node).getRight(), sb);
+                break;
+            case AssignExpression:
+                digest(((AssignExpression) node).getLeft(), sb);
+                digest(((AssignExpression) node).getRight(), sb);
+                break;
+            case IndexExpression:
+                digest(((IndexExpression) node).getLeft(), sb);
+                digest(((IndexExpression) node).getIndex(), sb);
+                break;
+            case IfExpression:
+                digest(((IfExpression) node).getCondition(), sb);
+                digest(((IfExpression) node).getConsequence(), sb);
+                digest(((IfExpression) node).getAlternative(), sb);
+                break;
+            case WhileExpression:
+                digest(((WhileExpression) node).getCondition(), sb);
+                digest(((WhileExpression) node).getBody(), sb);
+                break;
+            case ForExpression:
+                digest(((ForExpression) node).getInit(), sb);
+                digest(((ForExpression) node).getCondition(), sb);
+                digest(((ForExpression) node).getIncrement(), sb);
+                digest(((ForExpression) node).getBody(), sb);
+                break;
+            case FunctionLiteral:
+                FunctionLiteral fl = (FunctionLiteral) node;
+                text(fl.getName() == null ? "" : fl.getName(), sb);
+                for (Identifier param : fl.getParameters()) {
+                    digest(param, sb);
+                }
+                digest(fl.getBody(), sb);
+                break;
+            case CallExpression:
+                digest(((CallExpression) node).getFunction(), sb);
+                for (Expression arg : ((CallExpression) node).getArguments()) {
+                    digest(arg, sb);
+                }
+                break;
+            case ArrayLiteral:
+                for (Expression e : ((ArrayLiteral) node).getElements()) {
+                    digest(e, sb);
+                }
+                break;
+            case HashLiteral:
+                for (Map.Entry<Expression, Expression> e : ((HashLiteral) node).getPairs().entrySet()) {
+                    digest(e.getKey(), sb);
+                    digest(e.getValue(), sb);
+                }
+                break;
+            default:
+                break;
+        }
+        sb.append(')');
+    }
+
+    private static void text(String s, StringBuilder sb) {
+        sb.append(' ').append(s.length()).append(':').append(s);
+    }
+
+    /**
+     * 读取缓存项
+     * @return 缓存项，不存在或无法读取时返回 null
+     */
+    Entry load(String key) {
+        Path file = dir.resolve(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            Entry e = new Entry();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                e.globals.add(readString(in));
+                e.indices.add(in.readInt());
+            }
+            n = in.readInt();
+            e.consts = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                byte kind = in.readByte();
+                if (kind == 0) {
+                    e.consts.add(new Int(in.readInt()));
+                } else if (kind == 1) {
+                    e.consts.add(new Str(readString(in)));
+                } else {
+                    e.consts.add(readFunction(in));
+                }
+            }
+            e.cf = readFunction(in);
+            return e;
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存项，先写临时文件再改名，多个线程或进程同时写同一项也不会读到半个文件，写入失败时删除临时文件
+     * <p> 有变量没有解析到（lookups 中的值为 null）时不写入，这样的结果不能按全局变量校验</p>
+     * @param lookups 编译时解析过的全局变量
+     */
+    void store(String key, CompiledFunction cf, ArrayList<Obj> consts, Map<String, Symbol> lookups) {
+        if (lookups.containsValue(null)) {
+            return;
+        }
+        Path tmp = null;
+        try {
+            Files.createDirectories(dir);
+            tmp = Files.createTempFile(dir, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(lookups.size());
+                for (Map.Entry<String, Symbol> e : lookups.entrySet()) {
+                    writeString(out, e.getKey());
+                    out.writeInt(e.getValue().index());
+                }
+                out.writeInt(consts.size());
+                for (Obj obj : consts) {
+                    if (obj instanceof Int) {
+                        out.writeByte(0);
+                        out.writeInt(((Int) obj).getValue());
+                    } else if (obj instanceof Str) {
+                        out.writeByte(1);
+                        writeString(out, ((Str) obj).getValue());
+                    } else {
+                        out.writeByte(2);
+                        writeFunction(out, (CompiledFunction) obj);
+                    }
+                }
+                writeFunction(out, cf);
+            }
+            Files.move(tmp, dir.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+        } catch (IOException e) {
+            // 写缓存失败不影响编译结果
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    // 删除失败只留下一个临时文件
+                }
+            }
+        }
+    }
+
+    /**
+     * 字符串写为字节数加 UTF-8 字节，不受 writeUTF 的 64KB 限制
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static CompiledFunction readFunction(DataInputStream in) throws IOException {
+        int params = in.readInt();
+        byte[] code = new byte[in.readInt()];
+        in.readFully(code);
+        return new CompiledFunction(code, params);
+    }
+
+    private static void writeFunction(DataOutputStream out, CompiledFunction cf) throws IOException {
+        out.writeInt(cf.paramCount());
+        out.writeInt(cf.getInstructions().length);
+        out.write(cf.getInstructions());
+    }
+}
@@ -0,0 +1,155 @@
+package core.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import core.env.CompiledFunction;
+import core.is.InstructionSet;
+import core.is.Opcode;
+
+/**
+ * 编译完成后的窥孔优化，把循环中常见的指令序列合并为超级指令，减少每次迭代的分派次数
+ * <p> 目前识别的序列 </p>
+ * <pre>
+ *   GetLocal a; GetLocal b; Add        =>  AddLocals a b
+ *   Load c; GetLocal i; Lt; Jf off     =>  LtLocalConstJf i c off
+ *   SetLocal n; GetLocal n; Pop        =>  SetLocalNoPush n
+ *   SetGlobal n; GetGlobal n; Pop      =>  SetGlobalNoPush n
+ *   SetLocal n; GetLocal n             =>  Assign n
+ * </pre>
+ * 合并后指令长度会变化，所有跳转偏移会按新的位置重新计算。
+ * 如果某条跳转的目标落在待合并序列的中间，则该序列保持不变。
+ */
+public class Peephole {
+
+    private static final InstructionSet is = new InstructionSet();
+
+    public static ArrayList<Byte> optimize(ArrayList<Byte> instructions) {
+        byte[] code = CompiledFunction.toBytes(instructions);
+
+        ArrayList<Integer> starts = new ArrayList<>();
+        HashSet<Integer> targets = new HashSet<>();
+        for (int pos = 0; pos < code.length; pos += InstructionSet.lengthOf(code[pos])) {
+            starts.add(pos);
+            Opcode op = InstructionSet.opcodeOf(code[pos]);
+            if (op == Opcode.J || op == Opcode.Jf) {
+                targets.add(jumpTarget(code, pos, pos + 1));
+            }
+        }
+
+        ArrayList<Byte> out = new ArrayList<>();
+        HashMap<Integer, Integer> newPos = new HashMap<>();
+        // 新指令流中跳转指令的 (操作数位置, 指令结束位置, 旧跳转目标)
+        ArrayList<int[]> jumps = new ArrayList<>();
+
+        int n = starts.size();
+        for (int k = 0; k < n; ) {
+            int pos = starts.get(k);
+            newPos.put(pos, out.size());
+
+            if (matches(code, starts, targets, k, Opcode.GetLocal, Opcode.GetLocal, Opcode.Add)) {
+                int a = operand(code, starts.get(k));
+                int b = operand(code, starts.get(k + 1));
+                out.addAll(is.encode(Opcode.AddLocals, a, b));
+                k += 3;
+                continue;
+            }
+
+            if (matches(code, starts, targets, k, Opcode.Load, Opcode.GetLocal, Opcode.Lt, Opcode.Jf)) {
+                int c = operand(code, starts.get(k));
+                int i = operand(code, starts.get(k + 1));
+                int jf = starts.get(k + 3);
+                int start = out.size();
+                out.addAll(is.encode(Opcode.LtLocalConstJf, i, c, 0));
+                jumps.add(new int[] { start + 5, out.size(), jumpTarget(code, jf, jf + 1) });
+                k += 4;
+                continue;
+            }
+
+            if (matchesStore(code, starts, targets, k, Opcode.SetLocal, Opcode.GetLocal, true)) {
+                out.addAll(is.encode(Opcode.SetLocalNoPush, operand(code, pos)));
+                k += 3;
+                continue;
+            }
+
+            if (matchesStore(code, starts, targets, k, Opcode.SetGlobal, Opcode.GetGlobal, true)) {
+                out.addAll(is.encode(Opcode.SetGlobalNoPush, operand(code, pos)));
+                k += 3;
+                continue;
+            }
+
+            if (matchesStore(code, starts, targets, k, Opcode.SetLocal, Opcode.GetLocal, false)) {
+                out.addAll(is.encode(Opcode.Assign, operand(code, pos)));
+                k += 2;
+                continue;
+            }
+
+            Opcode op = InstructionSet.opcodeOf(code[pos]);
+            int len = InstructionSet.lengthOf(op);
+            int start = out.size();
+            for (int j = 0; j < len; j++) {
+                out.add(code[pos + j]);
+            }
+            if (op == Opcode.J || op == Opcode.Jf) {
+                jumps.add(new int[] { start + 1, out.size(), jumpTarget(code, pos, pos + 1) });
+            }
+            k++;
+        }
+        newPos.put(code.length, out.size());
+
+        for (int[] jump : jumps) {
+            Integer target = newPos.get(jump[2]);
+            if (target == null) {
+                // 跳转目标不在指令边界上，放弃优化
+                return instructions;
+            }
+            int offset = target - jump[1];
+            out.set(jump[0], (byte) (offset >> 8));
+            out.set(jump[0] + 1, (byte) offset);
+        }
+
+        return out;
+    }
+
+    /**
+     * 判断从第 k 条指令开始是否依次为给定的操作码，并且后续指令都不是跳转目标
+     */
+    private static boolean matches(byte[] code, ArrayList<Integer> starts, HashSet<Integer> targets, int k, Opcode... ops) {
+        if (k + ops.length > starts.size()) {
+            return false;
+        }
+        for (int i = 0; i < ops.length; i++) {
+            int pos = starts.get(k + i);
+            if (InstructionSet.opcodeOf(code[pos]) != ops[i]) {
+                return false;
+            }
+            if (i > 0 && targets.contains(pos)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 赋值语句生成的 Set n; Get n [; Pop] 序列，要求两条指令操作同一个变量
+     */
+    private static boolean matchesStore(byte[] code, ArrayList<Integer> starts, HashSet<Integer> targets, int k,
+            Opcode set, Opcode get, boolean withPop) {
+        boolean ok = withPop ? matches(code, starts, targets, k, set, get, Opcode.Pop)
+                : matches(code, starts, targets, k, set, get);
+        return ok && operand(code, starts.get(k)) == operand(code, starts.get(k + 1));
+    }
+
+    private static int operand(byte[] code, int pos) {
+        return ((code[pos + 1] & 0xFF) << 8) | (code[pos + 2] & 0xFF);
+    }
+
+    /**
+     * 跳转偏移相对于跳转指令的结束位置
+     */
+    private static int jumpTarget(byte[] code, int pos, int operandPos) {
+        int offset = (short) (((code[operandPos] & 0xFF) << 8) | (code[operandPos + 1] & 0xFF));
+        return pos + InstructionSet.lengthOf(code[pos]) + offset;
+    }
+}
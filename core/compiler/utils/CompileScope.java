@@ -40,6 +40,10 @@ public class CompileScope {
         return instructions;
     }
 
+    public void setInstructions(ArrayList<Byte> instructions) {
+        this.instructions = instructions;
+    }
+
     public boolean lastIs(Opcode opcode) {
         return lastOpcode == opcode;
     }
@@ -5,6 +5,12 @@ public class Symbol {
     public String scope;
     public int index;
 
+    /**
+     * 全局符号的定义序号，以及同名符号的上一次定义
+     */
+    int seq;
+    Symbol prev;
+
     public Symbol(String name, String scope, int index) {
         this.name = name;
         this.scope = scope;
@@ -2,6 +2,8 @@ package core.compiler.utils;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import core.env.builtin.Builtins;
 
@@ -11,6 +13,18 @@ public class SymbolTable {
     private ArrayList<Symbol> frees = new ArrayList<>();
     private Builtins builtins = new Builtins();
     private Symbol curFunc = null;
+
+    /**
+     * 全局表中已定义的符号数量（包括重复定义），视图只能看到序号小于 version 的定义
+     */
+    private int defined = 0;
+    private int version = Integer.MAX_VALUE;
+
+    /**
+     * 视图中记录的全局变量查找结果，用于判断缓存的编译结果是否仍然有效
+     */
+    private LinkedHashMap<String, Symbol> lookups = null;
+
     public SymbolTable() {}
 
     public SymbolTable(SymbolTable outer) {
@@ -30,10 +44,43 @@ public class SymbolTable {
             scope = "local";
         }
         Symbol symbol = new Symbol(name, scope, size());
+        if (outer == null) {
+            symbol.seq = defined++;
+            symbol.prev = symbols.get(name);
+        }
         symbols.put(name, symbol);
         return symbol;
     }
 
+    /**
+     * 生成全局表当前状态的只读视图，之后在全局表中新增或重复定义的符号对视图不可见，
+     * 用于在其他线程中编译顶层函数
+     * @return 全局表视图
+     */
+    public SymbolTable snapshot() {
+        SymbolTable view = new SymbolTable();
+        view.symbols = symbols;
+        view.builtins = builtins;
+        view.version = defined;
+        view.lookups = new LinkedHashMap<>();
+        return view;
+    }
+
+    /**
+     * 视图中解析过的全局变量，未找到的变量对应 null
+     * @return 变量名到符号的映射，非视图返回 null
+     */
+    public Map<String, Symbol> lookups() {
+        return lookups;
+    }
+
+    private Symbol visible(Symbol s) {
+        while (s != null && s.seq >= version) {
+            s = s.prev;
+        }
+        return s;
+    }
+
     public Symbol defineFree(Symbol ori) {
         Symbol symbol = new Symbol(ori.name(), "free", frees.size());
         frees.add(ori);
@@ -66,7 +113,7 @@ public class SymbolTable {
         }
 
 
-        if (symbols.containsKey(name)) {
+        if (visible(symbols.get(name)) != null) {
             return true;
         }
         if (outer != null) {
@@ -82,7 +129,10 @@ public class SymbolTable {
             return new Symbol(name, "builtin", builtins.getIndex(name));
         }
 
-        Symbol s = symbols.get(name);
+        Symbol s = visible(symbols.get(name));
+        if (lookups != null) {
+            lookups.putIfAbsent(name, s);
+        }
         if (s != null) {
             return s;
         }
@@ -1,41 +1,153 @@
 package core.env;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
+/**
+ * 数组对象
+ * <p> 只存放整数时使用 int[] 存储（int 模式），第一次写入非整数元素时
+ * 整体转换为 Obj[] 存储（通用模式），之后不再切换回 int 模式。</p>
+ */
 public class Array extends Obj {
-    private ArrayList<Obj> elements;
+    private static final int[] EMPTY_INTS = new int[0];
+
+    /**
+     * int 模式下的元素，通用模式下为 null
+     */
+    private int[] ints;
+
+    /**
+     * 通用模式下的元素，int 模式下为 null
+     */
+    private Obj[] elements;
+
+    private int size;
     
     public Array() {
-        elements = new ArrayList<>();
+        ints = EMPTY_INTS;
     }
 
     public Array(ArrayList<Obj> elems) {
-        this.elements = elems;
+        this(elems.toArray(new Obj[0]));
+    }
+
+    public Array(Obj[] elems) {
+        size = elems.length;
+        for (Obj elem : elems) {
+            if (elem.getClass() != Int.class) {
+                elements = elems;
+                return;
+            }
+        }
+        ints = new int[size];
+        for (int i = 0; i < size; i++) {
+            ints[i] = ((Int) elems[i]).getValue();
+        }
     }
 
-    public ArrayList<Obj> getElements() {
-        return elements;
+    private Array(int[] ints, Obj[] elements, int size) {
+        this.ints = ints;
+        this.elements = elements;
+        this.size = size;
+    }
+
+    /**
+     * 是否处于 int 模式
+     * @return 是否只包含整数
+     */
+    public boolean isIntArray() {
+        return ints != null;
+    }
+
+    /**
+     * int 模式下直接读取原始整数，调用前需确认 {@link #isIntArray()}
+     * @param index 索引
+     * @return 元素值
+     */
+    public int getInt(int index) {
+        return ints[index];
+    }
+
+    public Obj get(int index) {
+        if (ints != null) {
+            return Int.valueOf(ints[index]);
+        }
+        return elements[index];
     }
 
     public Array inverse() {
-        ArrayList<Obj> reversed = new ArrayList<>();
-        for (int i = elements.size() - 1; i >= 0; i--) {
-            reversed.add(elements.get(i));
+        if (ints != null) {
+            int[] reversed = new int[size];
+            for (int i = 0; i < size; i++) {
+                reversed[i] = ints[size - 1 - i];
+            }
+            return new Array(reversed, null, size);
         }
-        return new Array(reversed);
+        Obj[] reversed = new Obj[size];
+        for (int i = 0; i < size; i++) {
+            reversed[i] = elements[size - 1 - i];
+        }
+        return new Array(null, reversed, size);
     }
 
     public int length() {
-        return elements.size();
+        return size;
     }
 
     public void set(int index, Obj value) {
-        elements.set(index, value);
+        if (ints != null) {
+            if (value.getClass() == Int.class) {
+                ints[index] = ((Int) value).getValue();
+                return;
+            }
+            deoptimize();
+        }
+        elements[index] = value;
+    }
+
+    public void setInt(int index, int value) {
+        if (ints != null) {
+            ints[index] = value;
+            return;
+        }
+        elements[index] = Int.valueOf(value);
     }
 
     public void add(Obj value) {
-        elements.add(value);
+        if (ints != null) {
+            if (value.getClass() == Int.class) {
+                addInt(((Int) value).getValue());
+                return;
+            }
+            deoptimize();
+        }
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(8, size * 2));
+        }
+        elements[size++] = value;
+    }
+
+    public void addInt(int value) {
+        if (ints == null) {
+            add(Int.valueOf(value));
+            return;
+        }
+        if (size == ints.length) {
+            ints = Arrays.copyOf(ints, Math.max(8, size * 2));
+        }
+        ints[size++] = value;
+    }
+
+    /**
+     * 从 int 模式转换为通用模式
+     */
+    private void deoptimize() {
+        Obj[] objs = new Obj[Math.max(ints.length, 8)];
+        for (int i = 0; i < size; i++) {
+            objs[i] = Int.valueOf(ints[i]);
+        }
+        elements = objs;
+        ints = null;
     }
 
     @Override
@@ -45,27 +157,27 @@ public class Array extends Obj {
     
     @Override
     public String toString() {
-        String str = "[";
-        for (int i = 0; i < elements.size(); i++) {
-            str += elements.get(i).toString();
-            if (i < elements.size() - 1) {
-                str += ", ";
+        StringBuilder str = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            str.append(get(i).toString());
+            if (i < size - 1) {
+                str.append(", ");
             }
         }
-        str += "]";
-        return str;
+        str.append("]");
+        return str.toString();
     }
 
     @Override
     public String inspect() {
-        String str = "[";
-        for (int i = 0; i < elements.size(); i++) {
-            str += elements.get(i).inspect();
-            if (i < elements.size() - 1) {
-                str += ", ";
+        StringBuilder str = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            str.append(get(i).inspect());
+            if (i < size - 1) {
+                str.append(", ");
             }
         }
-        str += "]";
-        return str;
+        str.append("]");
+        return str.toString();
     }
 }
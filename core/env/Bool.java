@@ -1,18 +1,21 @@
 package core.env;
 
 public class Bool extends Obj{
+    public static final Bool TRUE = new Bool(true);
+    public static final Bool FALSE = new Bool(false);
+
     private boolean value;
 
     public Bool(boolean value) {
         this.value = value;
     }
 
-    public boolean getValue() {
-        return value;
+    public static Bool valueOf(boolean value) {
+        return value ? TRUE : FALSE;
     }
 
-    public HashKey hashKey() {
-        return new HashKey(ObjType.BOOLEAN, value ? 1 : 0);
+    public boolean getValue() {
+        return value;
     }
 
     @Override
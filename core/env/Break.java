@@ -1,7 +1,8 @@
 package core.env;
 
-public class Break extends Obj {
-    
+public class Break extends ControlSignal {
+    public static final Break INSTANCE = new Break();
+
     @Override
     public String inspect() {
         return "break";
@@ -4,22 +4,61 @@ import java.util.ArrayList;
 
 public class CompiledFunction extends Obj{
 
-    private ArrayList<Byte> instr = new ArrayList<>();
+    private byte[] instr;
     private int paramCount;
 
-    public CompiledFunction(ArrayList<Byte> instr, int paramCount) {
+    /**
+     * 与指令等长的内联缓存，由虚拟机按指令位置读写
+     */
+    private byte[] inlineCache;
+
+    /**
+     * 执行引擎附加的状态，由执行引擎创建和读写
+     */
+    private ExecutionState executionState;
+
+    public CompiledFunction(byte[] instr, int paramCount) {
         this.instr = instr;
         this.paramCount = paramCount;
+        this.inlineCache = new byte[instr.length];
     }
 
-    public ArrayList<Byte> getInstructions() {
+    public CompiledFunction(ArrayList<Byte> instr, int paramCount) {
+        this(toBytes(instr), paramCount);
+    }
+
+    /**
+     * 指令以紧凑的 byte[] 形式保存，虚拟机直接从数组中取指和读取操作数
+     * @return 指令字节数组
+     */
+    public byte[] getInstructions() {
         return instr;
     }
     
+    public byte[] inlineCache() {
+        return inlineCache;
+    }
+
     public int paramCount() {
         return paramCount;
     }
 
+    public ExecutionState executionState() {
+        return executionState;
+    }
+
+    public void setExecutionState(ExecutionState executionState) {
+        this.executionState = executionState;
+    }
+
+    public static byte[] toBytes(ArrayList<Byte> instr) {
+        byte[] bytes = new byte[instr.size()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = instr.get(i);
+        }
+        return bytes;
+    }
+
     @Override
     public ObjType type() {
         return ObjType.CompiledFunction;
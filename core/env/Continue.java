@@ -1,6 +1,8 @@
 package core.env;
 
-public class Continue extends Obj {
+public class Continue extends ControlSignal {
+    public static final Continue INSTANCE = new Continue();
+
     @Override
     public String inspect() {
         return "continue";
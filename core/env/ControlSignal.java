@@ -0,0 +1,8 @@
+package core.env;
+
+/**
+ * 控制流信号（return、break、continue）的公共父类，
+ * 循环中只需一次 instanceof 判断就能排除没有控制转移的语句
+ */
+public abstract class ControlSignal extends Obj {
+}
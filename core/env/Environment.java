@@ -1,51 +1,122 @@
 package core.env;
 
+import java.util.Arrays;
 import java.util.HashMap;
 
+/**
+ * 变量环境
+ * <p> 变量的值存放在数组中，names 记录变量名对应的下标。同一作用域（同一个函数、同一个 for 循环）
+ * 创建的环境共用 names，由 {@link core.eval.Resolver} 预先算好；经过解析的标识符直接按
+ * (层数, 下标) 访问，不再逐层查找变量名。</p>
+ * <p> 下标处的值为 null 表示变量还没有执行到定义语句，此时按变量名继续向外层查找，
+ * 与按名字查找的结果一致。</p>
+ */
 public class Environment extends Obj {
-    private HashMap<String, Obj> vars = new HashMap<>();
+    private HashMap<String, Integer> names;
+    private Obj[] values;
 
     private Environment outer;
 
     public Environment(Environment outer) {
-        this.outer = outer;
+        this(outer, new HashMap<>());
     }
 
     public Environment() {
-        outer = null;
+        this(null);
     }
 
-    public Obj get(String name) {
-        if (vars.containsKey(name)) {
-            return vars.get(name);
+    /**
+     * @param outer 外层环境
+     * @param names 作用域中的变量名及其下标，同一作用域的环境共用
+     */
+    public Environment(Environment outer, HashMap<String, Integer> names) {
+        this.outer = outer;
+        this.names = names;
+        this.values = new Obj[Math.max(names.size(), 4)];
+    }
+
+    /**
+     * 作用域中的变量名及其下标，解析新的代码时可以继续添加
+     */
+    public HashMap<String, Integer> names() {
+        return names;
+    }
+
+    private Obj local(String name) {
+        Integer slot = names.get(name);
+        if (slot == null || slot >= values.length) {
+            return null;
         }
-        if (outer != null) {
-            return outer.get(name);
+        return values[slot];
+    }
+
+    public Obj get(String name) {
+        for (Environment e = this; e != null; e = e.outer) {
+            Obj val = e.local(name);
+            if (val != null) {
+                return val;
+            }
         }
         return null;
     }
 
     public boolean has(String name) {
-        if (vars.containsKey(name)) {
-            return true;
-        }
-        if (outer != null) {
-            return outer.has(name);
-        }
-        return false;
+        return get(name) != null;
     }
 
     public void set(String name, Obj value) {
-        if (vars.containsKey(name)) {
-            vars.put(name, value);
-            return;
+        for (Environment e = this; e != null; e = e.outer) {
+            if (e.local(name) != null) {
+                e.values[e.names.get(name)] = value;
+                return;
+            }
         }
-        else {
-            outer.set(name, value);
-        }   
     }
 
     public void define(String name, Obj value) {
-        vars.put(name, value);
+        Integer slot = names.get(name);
+        if (slot == null) {
+            slot = names.size();
+            names.put(name, slot);
+        }
+        define(slot, value);
+    }
+
+    /**
+     * 按下标定义当前环境中的变量
+     */
+    public void define(int slot, Obj value) {
+        if (slot >= values.length) {
+            values = Arrays.copyOf(values, Math.max(values.length * 2, slot + 1));
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * 按 (层数, 下标) 读取变量
+     * @return 变量的值，还没有定义时返回 null
+     */
+    public Obj get(int depth, int slot) {
+        Environment e = this;
+        for (int i = 0; i < depth; i++) {
+            e = e.outer;
+        }
+        return slot < e.values.length ? e.values[slot] : null;
+    }
+
+    /**
+     * 按 (层数, 下标) 修改已定义的变量
+     * @return 变量是否已定义
+     */
+    public boolean set(int depth, int slot, Obj value) {
+        Environment e = this;
+        for (int i = 0; i < depth; i++) {
+            e = e.outer;
+        }
+        if (slot >= e.values.length || e.values[slot] == null) {
+            return false;
+        }
+        e.values[slot] = value;
+        return true;
     }
 }
@@ -0,0 +1,8 @@
+package core.env;
+
+/**
+ * 执行引擎附加在函数上的状态（如调用次数、类型信息、即时编译的代码）
+ * <p> 具体内容由执行引擎定义，{@link CompiledFunction} 只负责保存，不依赖执行引擎。</p>
+ */
+public interface ExecutionState {
+}
@@ -1,6 +1,7 @@
 package core.env;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import core.ast.expression.Identifier;
 import core.ast.statement.BlockStatement;
@@ -9,11 +10,20 @@ public class Function extends Obj {
     private Environment env;
     private BlockStatement body;
     private ArrayList<Identifier> params;
+    private HashMap<String, Integer> scope;
 
     public Function(Environment env, BlockStatement body, ArrayList<Identifier> params) {
+        this(env, body, params, null);
+    }
+
+    /**
+     * @param scope 解析得到的函数作用域，调用时按它创建环境；为 null 时按名字定义变量
+     */
+    public Function(Environment env, BlockStatement body, ArrayList<Identifier> params, HashMap<String, Integer> scope) {
         this.env = env;
         this.body = body;
         this.params = params;
+        this.scope = scope;
     }
 
     public Environment getEnv() {
@@ -28,6 +38,10 @@ public class Function extends Obj {
         return params;
     }
 
+    public HashMap<String, Integer> getScope() {
+        return scope;
+    }
+
     @Override
     public ObjType type() {
         return ObjType.FUNCTION;
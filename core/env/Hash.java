@@ -1,40 +1,175 @@
 package core.env;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * 哈希表对象
+ * <p> 开放定址（线性探测）实现。键、值、哈希值按插入顺序存放在平行数组中，
+ * slots 中存放条目下标加一（0 表示空槽），因此遍历和 inspect 的结果按插入顺序输出。</p>
+ * <p> 键只能是 Int、Str、Bool，直接按值计算哈希，查找时不分配任何对象。
+ * Str 使用自身缓存的哈希值，比较时先比较引用，再比较哈希值和字符串内容。</p>
+ */
 public class Hash extends Obj {
-    HashMap<HashKey, HashPair> pairs = new HashMap<>();
+    private static final int MIN_SLOTS = 8;
 
-    public Hash(HashMap<HashKey, HashPair> pairs) {
-        this.pairs = pairs;
+    private int[] slots;
+    private int[] hashes;
+    private Obj[] keys;
+    private Obj[] values;
+    private int size;
+
+    public Hash() {
+        this(0);
+    }
+
+    /**
+     * @param expected 预计的键值对数量
+     */
+    public Hash(int expected) {
+        int cap = MIN_SLOTS;
+        while (cap * 2 < expected * 3) {
+            cap <<= 1;
+        }
+        slots = new int[cap];
+        int entries = Math.max(expected, 4);
+        hashes = new int[entries];
+        keys = new Obj[entries];
+        values = new Obj[entries];
+    }
+
+    /**
+     * 判断对象能否作为哈希表的键
+     */
+    public static boolean isHashable(Obj key) {
+        Class<?> c = key.getClass();
+        return c == Int.class || c == Str.class || c == Bool.class;
+    }
+
+    private static int hashOf(Obj key) {
+        Class<?> c = key.getClass();
+        int h;
+        if (c == Int.class) {
+            h = ((Int) key).getValue();
+        } else if (c == Str.class) {
+            return ((Str) key).hash();
+        } else {
+            h = ((Bool) key).getValue() ? 1231 : 1237;
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean sameKey(Obj a, Obj b) {
+        if (a == b) return true;
+        Class<?> c = a.getClass();
+        if (c != b.getClass()) return false;
+        if (c == Int.class) {
+            return ((Int) a).getValue() == ((Int) b).getValue();
+        }
+        if (c == Str.class) {
+            return ((Str) a).getValue().equals(((Str) b).getValue());
+        }
+        return ((Bool) a).getValue() == ((Bool) b).getValue();
+    }
+
+    /**
+     * 查找键所在的槽位，找不到时返回应插入的空槽位（取反）
+     */
+    private int find(Obj key, int h) {
+        int mask = slots.length - 1;
+        int i = h & mask;
+        while (true) {
+            int e = slots[i];
+            if (e == 0) {
+                return ~i;
+            }
+            e--;
+            if (hashes[e] == h && sameKey(keys[e], key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
     }
 
     public int size() {
-        return pairs.size();
+        return size;
+    }
+
+    /**
+     * @param key 键，必须满足 {@link #isHashable(Obj)}
+     * @return 对应的值，不存在时返回 null
+     */
+    public Obj get(Obj key) {
+        int slot = find(key, hashOf(key));
+        return slot < 0 ? null : values[slots[slot] - 1];
+    }
+
+    /**
+     * 插入或覆盖键值对，已存在的键保持原来的插入位置
+     * @param key 键，必须满足 {@link #isHashable(Obj)}
+     */
+    public void put(Obj key, Obj value) {
+        int h = hashOf(key);
+        int slot = find(key, h);
+        if (slot >= 0) {
+            values[slots[slot] - 1] = value;
+            return;
+        }
+        if ((size + 1) * 3 > slots.length * 2) {
+            rehash(slots.length << 1);
+            slot = find(key, h);
+        }
+        if (size == keys.length) {
+            int cap = size << 1;
+            hashes = Arrays.copyOf(hashes, cap);
+            keys = Arrays.copyOf(keys, cap);
+            values = Arrays.copyOf(values, cap);
+        }
+        hashes[size] = h;
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        slots[~slot] = size;
+    }
+
+    private void rehash(int cap) {
+        int[] table = new int[cap];
+        int mask = cap - 1;
+        for (int e = 0; e < size; e++) {
+            int i = hashes[e] & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = e + 1;
+        }
+        slots = table;
     }
 
-    public HashPair get(HashKey key) {
-        return pairs.get(key);
+    /**
+     * 按插入顺序取第 i 个键
+     */
+    public Obj keyAt(int i) {
+        return keys[i];
     }
 
-    public void put(HashKey key, HashPair value) {
-        pairs.put(key, value);
+    /**
+     * 按插入顺序取第 i 个值
+     */
+    public Obj valueAt(int i) {
+        return values[i];
     }
 
     @Override
     public String inspect() {
-        String str = "{";
-        if (pairs.size() == 0) {
-            str += "}";
-            return str;
+        if (size == 0) {
+            return "{}";
         }
-        for (Map.Entry<HashKey, HashPair> entry : pairs.entrySet()) {
-            str += entry.getValue().getKey().inspect() + ":" + entry.getValue().getValue().inspect() + ",";
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(keys[i].inspect()).append(':').append(values[i].inspect());
         }
-        str = str.substring(0, str.length() - 1);
-        str += "}";
-        return str;
+        return sb.append('}').toString();
     }
 
     @Override
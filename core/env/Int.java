@@ -1,11 +1,31 @@
 package core.env;
 
 public class Int extends Obj{
+    /**
+     * 小整数缓存范围，可通过系统属性 cho.int.cache.low / cho.int.cache.high 调整
+     */
+    private static final int CACHE_LOW = Integer.getInteger("cho.int.cache.low", -128);
+    private static final int CACHE_HIGH = Math.max(CACHE_LOW - 1, Integer.getInteger("cho.int.cache.high", 1024));
+    private static final Int[] CACHE = new Int[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new Int(CACHE_LOW + i);
+        }
+    }
+
     private int val;
     public Int(int val) {
         this.val = val;
     }
 
+    public static Int valueOf(int val) {
+        if (val >= CACHE_LOW && val <= CACHE_HIGH) {
+            return CACHE[val - CACHE_LOW];
+        }
+        return new Int(val);
+    }
+
     public int getValue() {
         return val;
     }
@@ -24,8 +44,4 @@ public class Int extends Obj{
     public String toString() {
         return String.valueOf(val);
     }
-
-    public HashKey hashKey() {
-        return new HashKey(ObjType.INTEGER, val);
-    }
 }
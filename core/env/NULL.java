@@ -1,6 +1,8 @@
 package core.env;
 
 public class NULL extends Obj {
+    public static final NULL INSTANCE = new NULL();
+
     @Override
     public ObjType type() {
         return ObjType.NULL;
@@ -12,7 +12,6 @@ public enum ObjType {
     FUNCTION,
     BUILTIN,
     RETURNVALUE,
-    HASHPAIR,
     BREAK,
     CONTINUE,
     CompiledFunction,
@@ -0,0 +1,19 @@
+package core.env;
+
+/**
+ * return 语句的信号，本身不带返回值，返回值由执行引擎另外保存，
+ * 取走之前信号一直向外传递
+ */
+public class Return extends ControlSignal {
+    public static final Return INSTANCE = new Return();
+
+    @Override
+    public String inspect() {
+        return "return";
+    }
+
+    @Override
+    public ObjType type() {
+        return ObjType.RETURNVALUE;
+    }
+}
@@ -1,17 +1,89 @@
 package core.env;
 
+import java.util.ArrayDeque;
+
 public class Str extends Obj{
-    
+    /**
+     * 每次启动随机生成的哈希种子，使构造大量冲突键的输入无法跨进程复用
+     */
+    private static final int SEED = (int) System.nanoTime() * 0x9E3779B9 | 1;
+
+    /**
+     * 短于该长度的拼接直接生成新字符串，不再构造拼接节点
+     */
+    private static final int ROPE_THRESHOLD = 64;
+
+    /**
+     * 字符串内容，作为未展开的拼接节点时为 null
+     */
     private String val;
 
+    /**
+     * 未展开的拼接节点的左右两部分，展开后置为 null
+     */
+    private Str left;
+    private Str right;
+
+    private final int length;
+
+    /**
+     * 缓存的哈希值，0 表示尚未计算
+     */
+    private int hash;
+
     public Str(String val) {
         this.val = val;
+        this.length = val.length();
+    }
+
+    private Str(Str left, Str right) {
+        this.left = left;
+        this.right = right;
+        this.length = left.length + right.length;
+    }
+
+    /**
+     * 字符串拼接
+     * <p> 较长的结果以拼接节点（rope）表示，不复制内容，在第一次需要内容时才展开，
+     * 因此在循环中反复追加的总代价是线性的。</p>
+     */
+    public static Str concat(Str left, Str right) {
+        if (right.length == 0) return left;
+        if (left.length == 0) return right;
+        if (left.length + right.length < ROPE_THRESHOLD) {
+            return new Str(left.getValue() + right.getValue());
+        }
+        return new Str(left, right);
     }
 
     public String getValue() {
+        if (val == null) {
+            flatten();
+        }
         return val;
     }
 
+    /**
+     * 展开拼接节点。使用显式栈而非递归，循环追加得到的深度很大的左斜树也不会栈溢出
+     */
+    private void flatten() {
+        StringBuilder sb = new StringBuilder(length);
+        ArrayDeque<Str> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            Str s = pending.pop();
+            if (s.val != null) {
+                sb.append(s.val);
+            } else {
+                pending.push(s.right);
+                pending.push(s.left);
+            }
+        }
+        val = sb.toString();
+        left = null;
+        right = null;
+    }
+
     @Override
     public ObjType type() {
         return ObjType.STRING;
@@ -19,14 +91,30 @@ public class Str extends Obj{
 
     @Override
     public String inspect() {
-        return val;
+        return getValue();
     }
 
     public int length() {
-        return val.length();
+        return length;
     }
 
-    public HashKey hashKey() {
-        return new HashKey(ObjType.STRING, val.hashCode());
+    /**
+     * 作为哈希表键时使用的哈希值，首次调用时计算并缓存
+     * <p> 不使用 String.hashCode，后者可以轻易构造出大量相同哈希的字符串。</p>
+     */
+    public int hash() {
+        int h = hash;
+        if (h == 0) {
+            String v = getValue();
+            h = SEED;
+            for (int i = 0; i < v.length(); i++) {
+                h = (h ^ v.charAt(i)) * 0x01000193;
+                h ^= h >>> 15;
+            }
+            h ^= h >>> 16;
+            if (h == 0) h = 1;
+            hash = h;
+        }
+        return h;
     }
 }
@@ -78,19 +78,19 @@ public class Builtins extends Obj{
         }
         Scanner scanner = new Scanner(System.in);
         int num = scanner.nextInt();
-        return new Int(num);
+        return Int.valueOf(num);
     }
 
     private Obj len(ArrayList<Obj> args) {
         if (args.get(0).type() == ObjType.ARRAY) {
             Array arr = (Array) args.get(0);
-            return new Int(arr.length());
+            return Int.valueOf(arr.length());
         } else if (args.get(0).type() == ObjType.STRING) {
             Str str = (Str) args.get(0);
-            return new Int(str.length());
+            return Int.valueOf(str.length());
         } else if (args.get(0).type() == ObjType.HASH) {
             Hash hash = (Hash) args.get(0);
-            return new Int(hash.size());
+            return Int.valueOf(hash.size());
         } else {
             return new Error("can't get length of: " + args.get(0).type());
         }
@@ -100,7 +100,7 @@ public class Builtins extends Obj{
         for (Obj obj : args) {
             System.out.print(obj.inspect() + " ");
         }
-        return new NULL();
+        return NULL.INSTANCE;
     }
     
     private Obj println(ArrayList<Obj> args) {
@@ -108,7 +108,7 @@ public class Builtins extends Obj{
             System.out.print(obj.inspect() + " ");
         }
         System.out.println();
-        return new NULL();
+        return NULL.INSTANCE;
     }
 
     private Obj type(ArrayList<Obj> args) {
@@ -28,17 +28,16 @@ import core.env.Environment;
 import core.env.Error;
 import core.env.Function;
 import core.env.Hash;
-import core.env.HashKey;
-import core.env.HashPair;
 import core.env.NULL;
 import core.env.Int;
 import core.env.Array;
 import core.env.Bool;
 import core.env.Break;
 import core.env.Continue;
+import core.env.ControlSignal;
 import core.env.Obj;
 import core.env.ObjType;
-import core.env.ReturnValue;
+import core.env.Return;
 import core.env.Str;
 import core.env.builtin.BuiltinFunc;
 import core.env.builtin.Builtins;
@@ -48,6 +47,13 @@ import java.util.HashMap;
 
 public class Evaluator {
     private Builtins builtin = new Builtins();
+    private Resolver resolver = new Resolver();
+
+    /**
+     * return 语句的返回值，求值结果为 {@link Return#INSTANCE} 时有效，由函数调用或程序取走；
+     * break 和 continue 同样使用 {@link Break#INSTANCE} 和 {@link Continue#INSTANCE}，不再创建信号对象
+     */
+    private Obj pendingReturn;
 
     public Obj eval(ASTNode node, Environment env) {
         switch (node.type()) {
@@ -61,13 +67,13 @@ public class Evaluator {
             case ReturnStatement:
                 return evalReturnStatement((ReturnStatement) node, env);
             case BreakStatement:
-                return new Break();
+                return Break.INSTANCE;
             case ContinueStatement:
-                return new Continue();
+                return Continue.INSTANCE;
             case IntegerLiteral:
-                return new Int(((IntegerLiteral) node).getValue());
+                return Int.valueOf(((IntegerLiteral) node).getValue());
             case BooleanLiteral:
-                return new Bool(((BooleanLiteral) node).getValue());
+                return Bool.valueOf(((BooleanLiteral) node).getValue());
             case StringLiteral:
                 return new Str(((StringLiteral) node).getValue());
             case Identifier:
@@ -79,7 +85,13 @@ public class Evaluator {
                 if (val.type() == ObjType.ERROR) {
                     return val;
                 }
-                env.define(vs.getIdentifier().getValue(), val);
+                Obj stored = valueOf(val);
+                Identifier id = vs.getIdentifier();
+                if (id.getSlot() >= 0) {
+                    env.define(id.getSlot(), stored);
+                } else {
+                    env.define(id.getValue(), stored);
+                }
                 return val;
             }
             case AssignExpression:
@@ -89,7 +101,7 @@ public class Evaluator {
                 PrefixExpression pe = (PrefixExpression) node;
                 Obj right = eval(pe.getRight(),env);
                 String op = pe.getOp();
-                return evalPrefixExpression(op, right);
+                return Operators.prefix(op, right);
             }
             case InfixExpression: {
                 InfixExpression ie = (InfixExpression) node;
@@ -102,7 +114,7 @@ public class Evaluator {
                     return right;
                 }
                 String op = ie.getOp();
-                return evalInfixExpression(op, left, right);
+                return Operators.infix(op, left, right);
             }
             case IfExpression:
                 return evalIfExpression((IfExpression) node, env);
@@ -113,7 +125,7 @@ public class Evaluator {
             case FunctionLiteral:
             {
                 FunctionLiteral fl = (FunctionLiteral) node;
-                Function function = new Function(env, fl.getBody(),fl.getParameters());
+                Function function = new Function(env, fl.getBody(), fl.getParameters(), fl.getScope());
                 return function;
             }
             case CallExpression:
@@ -150,7 +162,7 @@ public class Evaluator {
                 if (index.type() == ObjType.ERROR) {
                     return index;
                 }
-                return evalIndexExpression(left, index);
+                return Operators.index(left, index);
             }
             case HashLiteral:
                 return evalHashLiteral((HashLiteral) node, env);
@@ -168,13 +180,17 @@ public class Evaluator {
         if (val.type() == ObjType.ERROR) {
             return val;
         }
+        Obj stored = valueOf(val);
 
         Expression ident = ae.getLeft();
 
         if (ident instanceof Identifier) {
             Identifier id = (Identifier) ident;
+            if (id.getDepth() >= 0 && env.set(id.getDepth(), id.getSlot(), stored)) {
+                return val;
+            }
             if (env.has(id.getValue())) {
-                env.set(id.getValue(), val);
+                env.set(id.getValue(), stored);
             } else {
                 return new Error("identifier not defined: " + id.getValue());
             }
@@ -195,103 +211,38 @@ public class Evaluator {
                     || ((Int)index).getValue() < 0) {
                     return new Error("index out of bounds");
                 }
-                array.set(((Int)index).getValue(), val);
+                array.set(((Int)index).getValue(), stored);
             }
-            if (left.type() == ObjType.HASH) {
-                if (index.type() == ObjType.INTEGER) {
-                    ((Hash) left).put(((Int)index).hashKey(), new HashPair(index, val));
-                }
-                if (index.type() == ObjType.STRING) {
-                    ((Hash) left).put(((Str)index).hashKey(), new HashPair(index, val));
-                }
-                if (index.type() == ObjType.BOOLEAN) {
-                    ((Hash) left).put(((Bool)index).hashKey(), new HashPair(index, val));
-                }
-                
+            if (left.type() == ObjType.HASH && Hash.isHashable(index)) {
+                ((Hash) left).put(index, stored);
             }
 
             
         }
 
-        return val;
+        return restoreReturn(val, stored);
         
     }
 
     private Obj evalHashLiteral(HashLiteral node, Environment env) {
-        HashMap<HashKey, HashPair> pairs = new HashMap<>();
-        HashMap<Expression, Expression> pairs2 = node.getPairs();
+        HashMap<Expression, Expression> pairs = node.getPairs();
+        Hash hash = new Hash(pairs.size());
 
-        for (Expression key : pairs2.keySet()) {
-            Obj v = eval(key, env);
-            if (v.type() == ObjType.ERROR) {
-                return v;
-            }
-            HashKey hashKey = new HashKey();
-            if (v.type() == ObjType.INTEGER) {
-                hashKey = ((Int) v).hashKey();
+        for (Expression key : pairs.keySet()) {
+            Obj k = eval(key, env);
+            if (k.type() == ObjType.ERROR) {
+                return k;
             }
-            if (v.type() == ObjType.STRING) {
-                hashKey = ((Str) v).hashKey();
+            if (!Hash.isHashable(k)) {
+                return new Error("unusable as hash key: " + k.type());
             }
-            if (v.type() == ObjType.BOOLEAN) {
-                hashKey = ((Bool) v).hashKey();
-            }
-            Obj value = eval(pairs2.get(key), env);
+            Obj value = eval(pairs.get(key), env);
             if (value.type() == ObjType.ERROR) {
                 return value;
             }
-            pairs.put(hashKey, new HashPair(v, value));
-            
+            hash.put(k, valueOf(value));
         }
-        return new Hash(pairs);
-    }
-
-    private Obj evalIndexExpression(Obj left, Obj index) {
-        if (left.type() == ObjType.ARRAY && index.type() == ObjType.INTEGER) {
-            Array array = (Array) left;
-            int i = ((Int) index).getValue();
-            if (i < 0 || i >= array.getElements().size()) {
-                return new Error("index out of bounds");
-            }
-            return array.getElements().get(i);
-        }
-
-        if (left.type() == ObjType.HASH) {
-            
-
-            HashKey hashKey = new HashKey();
-            if (index.type() == ObjType.STRING) {
-                Str key = (Str) index;
-                hashKey = key.hashKey();
-            }
-            if (index.type() == ObjType.INTEGER) {
-                Int key = (Int) index;
-                hashKey = key.hashKey();
-            }
-            if (index.type() == ObjType.BOOLEAN) {
-                Bool key = (Bool) index;
-                hashKey = key.hashKey();
-            }
-            Hash hash = (Hash) left;
-            Obj value = hash.get(hashKey);
-            if (value == null) {
-                return new Error("key not found in hash: " + index.inspect());
-            }
-            return ((HashPair)value).getValue();
-        }
-
-        if (left.type() == ObjType.STRING) {
-            if (index.type() == ObjType.INTEGER) {
-                Str str = (Str) left;
-                int i = ((Int) index).getValue();
-                if (i < 0 || i >= str.length()) {
-                    return new Error("index out of bounds");
-                }
-                return new Str(String.valueOf(str.getValue().charAt(i)));
-            }
-        }
-
-        return new Error("index operator not supported for " + left.type() + " with index type of " + index.type());
+        return hash;
     }
 
     private Obj evalFunction(Obj fn, ArrayList<Obj> args) {
@@ -304,8 +255,8 @@ public class Evaluator {
 
             Environment extendedEnv = extendFunctionEnv(function, args);
             Obj evaluated = eval(function.getBody(), extendedEnv);
-            if (evaluated.type() == ObjType.RETURNVALUE) {
-                return ((ReturnValue)evaluated).getValue();
+            if (evaluated == Return.INSTANCE) {
+                return takeReturn();
             }
             return evaluated;
         }
@@ -329,15 +280,22 @@ public class Evaluator {
                 objs.add(obj);
                 return objs;
             }
-            objs.add(obj);
+            objs.add(valueOf(obj));
         }
         return objs;
     }
 
     private Environment extendFunctionEnv(Function fn, ArrayList<Obj> args) {
-        Environment env = new Environment(fn.getEnv());
+        if (fn.getScope() == null) {
+            Environment env = new Environment(fn.getEnv());
+            for (int i = 0; i < fn.getParams().size(); i++) {
+                env.define(fn.getParams().get(i).getValue(), args.get(i));
+            }
+            return env;
+        }
+        Environment env = new Environment(fn.getEnv(), fn.getScope());
         for (int i = 0; i < fn.getParams().size(); i++) {
-            env.define(fn.getParams().get(i).getValue(), args.get(i));
+            env.define(fn.getParams().get(i).getSlot(), args.get(i));
         }
         return env;
     }
@@ -347,16 +305,34 @@ public class Evaluator {
         if (val.type() == ObjType.ERROR) {
             return val;
         }
-        return new ReturnValue(val);
+        pendingReturn = valueOf(val);
+        return Return.INSTANCE;
+    }
+
+    /**
+     * 取走 return 语句的返回值
+     */
+    private Obj takeReturn() {
+        Obj val = pendingReturn;
+        pendingReturn = null;
+        return val;
+    }
+
+    /**
+     * 存入变量、参数、数组或哈希表的值：返回信号换成它的返回值，信号本身不会被存入
+     */
+    private Obj valueOf(Obj val) {
+        return val == Return.INSTANCE ? pendingReturn : val;
     }
 
     private Obj evalProgram(Program program, Environment env) {
-        Obj res = new NULL();
+        Obj res = NULL.INSTANCE;
+        resolver.resolve(program, env);
 
         for (Statement statement : program.getStatements()) {
             res = eval(statement, env);
-            if (res.type() == ObjType.RETURNVALUE) {
-                return ((ReturnValue) res).getValue();
+            if (res == Return.INSTANCE) {
+                return takeReturn();
             }
 
             if (res.type() == ObjType.ERROR) {
@@ -368,130 +344,33 @@ public class Evaluator {
     }
 
     private Obj evalBlockStatement(BlockStatement block, Environment env) {
-        Obj res = new NULL();
+        Obj res = NULL.INSTANCE;
         for (Statement statement : block.getStatements()) {
             res = eval(statement, env);
 
             if (res == null) {
-                return new NULL();
+                return NULL.INSTANCE;
             }
 
-            if (res.type() == ObjType.RETURNVALUE
-                    || res.type() == ObjType.ERROR) {
+            ObjType type = res.type();
+            if (type == ObjType.RETURNVALUE || type == ObjType.ERROR) {
                 return res;
             }
         }
         return res;
     }
 
-    private Obj evalPrefixExpression(String operator, Obj right) {
-        if (operator.equals("-")) {
-            if (right.type() == ObjType.INTEGER) {
-                return new Int(-((Int) right).getValue());
-            }
-            if (right.type() == ObjType.ERROR) {
-                return new Error("unknown operator: " + operator + " for " +  right.type());
-            }
-        }
-
-        if (operator.equals("!")) {
-            if (right.type() == ObjType.BOOLEAN) {
-                return new Bool(!((Bool) right).getValue());
-            }
-            if (right.type() == ObjType.NULL) {
-                return new Bool(true);
-            }
-            if (right.type() == ObjType.ERROR) {
-                return new Error("unknown operator: " + operator + " for " +  right.type());
-            }
-
-            return new Bool(false);
-        }
-
-        return new Error("unknown operator: " + operator + " for " +  right.type());
-    }
-
-    private Obj evalInfixExpression(String operator, Obj left, Obj right) {
-        if (left.type() == ObjType.INTEGER && right.type() == ObjType.INTEGER) {
-            return evalIntegerInfixExpression(operator, (Int) left, (Int) right);
-        }
-        if (left.type() == ObjType.STRING && right.type() == ObjType.STRING) {
-            return evalStringInfixExpression(operator, (Str) left, (Str) right);
-        }
-
-        if (left.type() == ObjType.BOOLEAN && right.type() == ObjType.BOOLEAN) {
-            if (operator.equals("==")) {
-                Bool leftBool = (Bool) left;
-                Bool rightBool = (Bool) right;
-                return new Bool(leftBool.getValue() == rightBool.getValue());
-            }
-            if (operator.equals("!=")) {
-                Bool leftBool = (Bool) left;
-                Bool rightBool = (Bool) right;
-                return new Bool(leftBool.getValue() != rightBool.getValue());
-            }
-        }
-
-        return new Error("unknown operator: " + operator +" for "+  left.type() + " and " + right.type());
-    }
-
-    private Obj evalIntegerInfixExpression(String operator, Int left, Int right) {
-        if (operator.equals("+")) {
-            return new Int(left.getValue() + right.getValue());
-        }
-        if (operator.equals("-")) {
-            return new Int(left.getValue() - right.getValue());
-        }
-        if (operator.equals("*")) {
-            return new Int(left.getValue() * right.getValue());
-        }
-        if (operator.equals("/")) {
-            return new Int(left.getValue() / right.getValue());
-        }
-        if (operator.equals("<")) {
-            return new Bool(left.getValue() < right.getValue());
-        }
-        if (operator.equals(">=")) {
-            return new Bool(left.getValue() >= right.getValue());
-        }
-        if (operator.equals("<=")) {
-            return new Bool(left.getValue() <= right.getValue());
-        }
-        if (operator.equals(">")) {
-            return new Bool(left.getValue() > right.getValue());
-        }
-        if (operator.equals("==")) {
-            return new Bool(left.getValue() == right.getValue());
-        }
-        if (operator.equals("!=")) {
-            return new Bool(left.getValue() != right.getValue());
-        }
-
-        return new Error("unknown operator: " + operator +" for "+  left.type() + " and " + right.type());
-    }
-
-    private Obj evalStringInfixExpression(String operator, Str left, Str right) {
-        if (operator.equals("+")) {
-            return new Str(left.getValue() + right.getValue());
-        }
-        if (operator.equals("==")) {
-            return new Bool(left.getValue().equals(right.getValue()));
-        }
-        if (operator.equals("!=")) {
-            return new Bool(!left.getValue().equals(right.getValue()));
-        }
-
-        return new Error("unknown operator: " + operator +" for "+  left.type() + " and " + right.type());
-    }
-
     private Obj evalForExpression(ForExpression fe, Environment env) {
 
         BlockStatement body = fe.getBody();
         Statement init = fe.getInit();
         Expression condition = fe.getCondition();
         Statement increment = fe.getIncrement();
-        Obj res = new NULL();
-        Environment extendedEnv = new Environment(env);
+        Obj res = NULL.INSTANCE;
+        Obj returned = null;
+        Environment extendedEnv = fe.getScope() != null
+                ? new Environment(env, fe.getScope())
+                : new Environment(env);
 
         if (init != null) {
             res = eval(init, extendedEnv);
@@ -505,26 +384,24 @@ public class Evaluator {
             return cond;
         }
 
+        loop:
         while (cond.type() == ObjType.BOOLEAN && ((Bool)cond).getValue() 
             || cond.type() == ObjType.NULL) {
-            boolean hasBreak = false;
 
             for (Statement statement : body.getStatements()) {
                 res = eval(statement, extendedEnv);
-                if (res.type() == ObjType.BREAK) {
-                    hasBreak = true;
-                    break;
-                }
-
-                if (res.type() == ObjType.CONTINUE) {
-                    break;
+                if (res instanceof ControlSignal) {
+                    ObjType type = res.type();
+                    if (type == ObjType.BREAK) {
+                        break loop;
+                    }
+                    if (type == ObjType.CONTINUE) {
+                        break;
+                    }
+                    returned = pendingReturn;
                 }
             }
 
-            if (hasBreak) {
-                break;
-            }
-
             if (increment != null) {
                 eval(increment,extendedEnv);
             }
@@ -533,48 +410,55 @@ public class Evaluator {
             if (cond.type() == ObjType.ERROR) {
                 return cond;
             }
-
-            
         }
 
-        return res;
+        return restoreReturn(res, returned);
     }
 
     private Obj evalWhileExpression(WhileExpression we, Environment env) {
         
         BlockStatement body = we.getBody();
-        Obj res = new NULL();
+        Obj res = NULL.INSTANCE;
+        Obj returned = null;
         Obj condition = eval(we.getCondition(), env);
         if (condition.type() == ObjType.ERROR) {
             return condition;
         }
 
+        loop:
         while (condition.type() == ObjType.BOOLEAN && ((Bool) condition).getValue()) {
-            
-            boolean hasBreak = false;
 
             for (Statement statement : body.getStatements()) {
                 res = eval(statement, env);
-                if (res.type() == ObjType.BREAK) {
-                    hasBreak = true;
-                    break;
-                }
-
-                if (res.type() == ObjType.CONTINUE) {
-                    break;
+                if (res instanceof ControlSignal) {
+                    ObjType type = res.type();
+                    if (type == ObjType.BREAK) {
+                        break loop;
+                    }
+                    if (type == ObjType.CONTINUE) {
+                        break;
+                    }
+                    returned = pendingReturn;
                 }
             }
 
-            if (hasBreak) {
-                break;
-            }
-
             condition = eval(we.getCondition(), env);
             if (condition.type() == ObjType.ERROR) {
                 return condition;
             }
         }
 
+        return restoreReturn(res, returned);
+    }
+
+    /**
+     * 结果是返回信号时恢复它的返回值：循环体中的 return 不会结束循环，赋值语句在值之后还要求下标，
+     * 期间的函数调用可能已经取走或改写了它
+     */
+    private Obj restoreReturn(Obj res, Obj returned) {
+        if (res == Return.INSTANCE) {
+            pendingReturn = returned;
+        }
         return res;
     }
 
@@ -594,12 +478,19 @@ public class Evaluator {
                 return eval(alternative, env);
             }
 
-            return new NULL();
+            return NULL.INSTANCE;
         }
         return new Error("unknown error in IfExpression: " + condition.type());
     }
 
     private Obj evalIdentifier(Identifier id, Environment env) {
+        if (id.getDepth() >= 0) {
+            Obj val = env.get(id.getDepth(), id.getSlot());
+            if (val != null) {
+                return val;
+            }
+        }
+        // 未解析或还没有执行到定义语句的变量按名字查找
         Obj val = env.get(id.getValue());
         if (val != null) {
             return val;
@@ -0,0 +1,162 @@
+package core.eval;
+
+import core.env.Array;
+import core.env.Bool;
+import core.env.Error;
+import core.env.Hash;
+import core.env.Int;
+import core.env.Obj;
+import core.env.ObjType;
+import core.env.Str;
+
+/**
+ * 运算符的语义，Evaluator 和 {@link core.tree.TreeCompiler} 生成的节点共用，保证两种执行方式结果一致
+ */
+public final class Operators {
+    private Operators() {
+    }
+
+    /**
+     * 前缀运算
+     */
+    public static Obj prefix(String operator, Obj right) {
+        if (operator.equals("-")) {
+            if (right.type() == ObjType.INTEGER) {
+                return Int.valueOf(-((Int) right).getValue());
+            }
+            if (right.type() == ObjType.ERROR) {
+                return new Error("unknown operator: " + operator + " for " +  right.type());
+            }
+        }
+
+        if (operator.equals("!")) {
+            if (right.type() == ObjType.BOOLEAN) {
+                return Bool.valueOf(!((Bool) right).getValue());
+            }
+            if (right.type() == ObjType.NULL) {
+                return Bool.TRUE;
+            }
+            if (right.type() == ObjType.ERROR) {
+                return new Error("unknown operator: " + operator + " for " +  right.type());
+            }
+
+            return Bool.FALSE;
+        }
+
+        return new Error("unknown operator: " + operator + " for " +  right.type());
+    }
+
+    /**
+     * 中缀运算
+     */
+    public static Obj infix(String operator, Obj left, Obj right) {
+        if (left.type() == ObjType.INTEGER && right.type() == ObjType.INTEGER) {
+            return integerInfix(operator, (Int) left, (Int) right);
+        }
+        if (left.type() == ObjType.STRING && right.type() == ObjType.STRING) {
+            return stringInfix(operator, (Str) left, (Str) right);
+        }
+
+        if (left.type() == ObjType.BOOLEAN && right.type() == ObjType.BOOLEAN) {
+            if (operator.equals("==")) {
+                Bool leftBool = (Bool) left;
+                Bool rightBool = (Bool) right;
+                return Bool.valueOf(leftBool.getValue() == rightBool.getValue());
+            }
+            if (operator.equals("!=")) {
+                Bool leftBool = (Bool) left;
+                Bool rightBool = (Bool) right;
+                return Bool.valueOf(leftBool.getValue() != rightBool.getValue());
+            }
+        }
+
+        return new Error("unknown operator: " + operator +" for "+  left.type() + " and " + right.type());
+    }
+
+    private static Obj integerInfix(String operator, Int left, Int right) {
+        if (operator.equals("+")) {
+            return Int.valueOf(left.getValue() + right.getValue());
+        }
+        if (operator.equals("-")) {
+            return Int.valueOf(left.getValue() - right.getValue());
+        }
+        if (operator.equals("*")) {
+            return Int.valueOf(left.getValue() * right.getValue());
+        }
+        if (operator.equals("/")) {
+            return Int.valueOf(left.getValue() / right.getValue());
+        }
+        if (operator.equals("<")) {
+            return Bool.valueOf(left.getValue() < right.getValue());
+        }
+        if (operator.equals(">=")) {
+            return Bool.valueOf(left.getValue() >= right.getValue());
+        }
+        if (operator.equals("<=")) {
+            return Bool.valueOf(left.getValue() <= right.getValue());
+        }
+        if (operator.equals(">")) {
+            return Bool.valueOf(left.getValue() > right.getValue());
+        }
+        if (operator.equals("==")) {
+            return Bool.valueOf(left.getValue() == right.getValue());
+        }
+        if (operator.equals("!=")) {
+            return Bool.valueOf(left.getValue() != right.getValue());
+        }
+
+        return new Error("unknown operator: " + operator +" for "+  left.type() + " and " + right.type());
+    }
+
+    private static Obj stringInfix(String operator, Str left, Str right) {
+        if (operator.equals("+")) {
+            return Str.concat(left, right);
+        }
+        if (operator.equals("==")) {
+            return Bool.valueOf(left.getValue().equals(right.getValue()));
+        }
+        if (operator.equals("!=")) {
+            return Bool.valueOf(!left.getValue().equals(right.getValue()));
+        }
+
+        return new Error("unknown operator: " + operator +" for "+  left.type() + " and " + right.type());
+    }
+
+    /**
+     * 下标访问
+     */
+    public static Obj index(Obj left, Obj index) {
+        if (left.type() == ObjType.ARRAY && index.type() == ObjType.INTEGER) {
+            Array array = (Array) left;
+            int i = ((Int) index).getValue();
+            if (i < 0 || i >= array.length()) {
+                return new Error("index out of bounds");
+            }
+            return array.get(i);
+        }
+
+        if (left.type() == ObjType.HASH) {
+            if (!Hash.isHashable(index)) {
+                return new Error("unusable as hash key: " + index.type());
+            }
+            Obj value = ((Hash) left).get(index);
+            if (value == null) {
+                return new Error("key not found in hash: " + index.inspect());
+            }
+            return value;
+        }
+
+        if (left.type() == ObjType.STRING) {
+            if (index.type() == ObjType.INTEGER) {
+                Str str = (Str) left;
+                int i = ((Int) index).getValue();
+                if (i < 0 || i >= str.length()) {
+                    return new Error("index out of bounds");
+                }
+                return new Str(String.valueOf(str.getValue().charAt(i)));
+            }
+        }
+
+        return new Error("index operator not supported for " + left.type() + " with index type of " + index.type());
+    }
+}
@@ -0,0 +1,223 @@
+package core.eval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import core.ast.Program;
+import core.ast.base.ASTNode;
+import core.ast.expression.ArrayLiteral;
+import core.ast.expression.AssignExpression;
+import core.ast.expression.CallExpression;
+import core.ast.expression.Expression;
+import core.ast.expression.ForExpression;
+import core.ast.expression.FunctionLiteral;
+import core.ast.expression.HashLiteral;
+import core.ast.expression.Identifier;
+import core.ast.expression.IfExpression;
+import core.ast.expression.IndexExpression;
+import core.ast.expression.InfixExpression;
+import core.ast.expression.PrefixExpression;
+import core.ast.expression.WhileExpression;
+import core.ast.statement.BlockStatement;
+import core.ast.statement.ExpressionStatement;
+import core.ast.statement.ReturnStatement;
+import core.ast.statement.Statement;
+import core.ast.statement.VarStatement;
+import core.env.Environment;
+
+/**
+ * 词法地址解析
+ * <p> 在求值之前遍历一遍语法树，为每个标识符算出 (层数, 下标)，求值时直接按数组下标访问变量。</p>
+ * <p> 作用域与 Evaluator 创建环境的方式一一对应：全局、每个函数（参数和函数体）、每个 for 循环
+ * （初始化语句、条件、增量和循环体）各是一个作用域，if 和 while 的代码块不单独成为作用域。
+ * 一个作用域中所有 var 定义的变量先统一登记，再解析其中的标识符，因此先使用后定义的变量
+ * （如相互调用的函数）也能解析到正确的作用域。</p>
+ * <p> 用法和示例 </p>
+ * <pre>
+ *   Environment env = new Environment();
+ *   new Resolver().resolve(program, env);
+ * </pre>
+ */
+public class Resolver {
+    private static class Scope {
+        final HashMap<String, Integer> names;
+        final Scope outer;
+
+        Scope(HashMap<String, Integer> names, Scope outer) {
+            this.names = names;
+            this.outer = outer;
+        }
+
+        void declare(String name) {
+            if (!names.containsKey(name)) {
+                names.put(name, names.size());
+            }
+        }
+    }
+
+    private Scope scope;
+
+    /**
+     * 解析整个程序，程序中定义的全局变量添加到 env 的作用域中
+     * @param program 程序
+     * @param env 执行程序的环境
+     */
+    public void resolve(Program program, Environment env) {
+        scope = new Scope(env.names(), null);
+        for (Statement statement : program.getStatements()) {
+            declare(statement);
+        }
+        for (Statement statement : program.getStatements()) {
+            resolve(statement);
+        }
+        scope = null;
+    }
+
+    /**
+     * 登记当前作用域中 var 定义的变量，不进入函数和 for 循环
+     */
+    private void declare(ASTNode node) {
+        visit(node, true);
+    }
+
+    private void resolve(ASTNode node) {
+        visit(node, false);
+    }
+
+    private void visit(ASTNode node, boolean declaring) {
+        if (node == null) {
+            return;
+        }
+        switch (node.type()) {
+            case BlockStatement:
+                for (Statement s : ((BlockStatement) node).getStatements()) {
+                    visit(s, declaring);
+                }
+                break;
+            case ExpressionStatement:
+                visit(((ExpressionStatement) node).getExpression(), declaring);
+                break;
+            case ReturnStatement:
+                visit(((ReturnStatement) node).getRet(), declaring);
+                break;
+            case VarStatement:
+            {
+                VarStatement vs = (VarStatement) node;
+                visit(vs.getValue(), declaring);
+                if (declaring) {
+                    scope.declare(vs.getIdentifier().getValue());
+                } else {
+                    Identifier id = vs.getIdentifier();
+                    id.resolve(0, scope.names.get(id.getValue()));
+                }
+                break;
+            }
+            case Identifier:
+                if (!declaring) {
+                    resolveIdentifier((Identifier) node);
+                }
+                break;
+            case PrefixExpression:
+                visit(((PrefixExpression) node).getRight(), declaring);
+                break;
+            case InfixExpression:
+                visit(((InfixExpression) node).getLeft(), declaring);
+                visit(((InfixExpression) node).getRight(), declaring);
+                break;
+            case AssignExpression:
+                visit(((AssignExpression) node).getRight(), declaring);
+                visit(((AssignExpression) node).getLeft(), declaring);
+                break;
+            case IndexExpression:
+                visit(((IndexExpression) node).getLeft(), declaring);
+                visit(((IndexExpression) node).getIndex(), declaring);
+                break;
+            case IfExpression:
+                visit(((IfExpression) node).getCondition(), declaring);
+                visit(((IfExpression) node).getConsequence(), declaring);
+                visit(((IfExpression) node).getAlternative(), declaring);
+                break;
+            case WhileExpression:
+                visit(((WhileExpression) node).getCondition(), declaring);
+                visit(((WhileExpression) node).getBody(), declaring);
+                break;
+            case ForExpression:
+                if (!declaring) {
+                    resolveFor((ForExpression) node);
+                }
+                break;
+            case FunctionLiteral:
+                if (!declaring) {
+                    resolveFunction((FunctionLiteral) node);
+                }
+                break;
+            case CallExpression:
+                visit(((CallExpression) node).getFunction(), declaring);
+                visitAll(((CallExpression) node).getArguments(), declaring);
+                break;
+            case ArrayLiteral:
+                visitAll(((ArrayLiteral) node).getElements(), declaring);
+                break;
+            case HashLiteral:
+                for (Map.Entry<Expression, Expression> e : ((HashLiteral) node).getPairs().entrySet()) {
+                    visit(e.getKey(), declaring);
+                    visit(e.getValue(), declaring);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void visitAll(ArrayList<Expression> list, boolean declaring) {
+        if (list == null) {
+            return;
+        }
+        for (Expression e : list) {
+            visit(e, declaring);
+        }
+    }
+
+    /**
+     * 从当前作用域向外查找变量，找不到时保持未解析，求值时按名字查找（如内置函数）
+     */
+    private void resolveIdentifier(Identifier id) {
+        int depth = 0;
+        for (Scope s = scope; s != null; s = s.outer) {
+            Integer slot = s.names.get(id.getValue());
+            if (slot != null) {
+                id.resolve(depth, slot);
+                return;
+            }
+            depth++;
+        }
+        id.resolve(-1, -1);
+    }
+
+    private void resolveFunction(FunctionLiteral fl) {
+        scope = new Scope(new HashMap<>(), scope);
+        for (Identifier param : fl.getParameters()) {
+            scope.declare(param.getValue());
+            param.resolve(0, scope.names.get(param.getValue()));
+        }
+        declare(fl.getBody());
+        resolve(fl.getBody());
+        fl.setScope(scope.names);
+        scope = scope.outer;
+    }
+
+    private void resolveFor(ForExpression fe) {
+        scope = new Scope(new HashMap<>(), scope);
+        declare(fe.getInit());
+        declare(fe.getCondition());
+        declare(fe.getIncrement());
+        declare(fe.getBody());
+        resolve(fe.getInit());
+        resolve(fe.getCondition());
+        resolve(fe.getIncrement());
+        resolve(fe.getBody());
+        fe.setScope(scope.names);
+        scope = scope.outer;
+    }
+}
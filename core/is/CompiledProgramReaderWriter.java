@@ -1,10 +1,13 @@
 package core.is;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.zip.CRC32;
 
 import core.compiler.CompiledProgram;
 import core.env.CompiledFunction;
@@ -12,183 +15,364 @@ import core.env.Int;
 import core.env.Obj;
 import core.env.Str;
 
+/**
+ * .cho 文件的读写
+ * <p> v2 格式（大端序）：</p>
+ * <pre>
+ *   头部     'C' 'H' 'O' 0xFF | u16 版本 | u16 段数 | u32 段表的 CRC32
+ *   段表     每段 u8 类型 | u32 偏移 | u32 长度 | u32 本段内容的 CRC32
+ *   常量段   u32 常量数 | 每个常量 u8 类型 u8 参数个数 u32 a u32 b | 字符串数据
+ *            整数 a 为值；字符串 a、b 为字符串数据在本段中的偏移和长度；函数 a、b 为字节码在函数段中的偏移和长度
+ *   函数段   所有函数的字节码
+ *   代码段   主程序字节码
+ * </pre>
+ * <p> 常量表每项长度固定，读取时可以直接定位到任意常量；每段单独校验，只校验实际读取的段，
+ * 不认识的段直接跳过，以后增加新的段不影响旧的读取器。没有 0xFF 标记的文件按 v1 格式读取。</p>
+ */
 public class CompiledProgramReaderWriter {
+    /**
+     * 当前写出的格式版本
+     */
+    public static final int VERSION = 2;
 
+    public static final byte SECTION_CONSTANTS = 1;
+    public static final byte SECTION_FUNCTIONS = 2;
+    public static final byte SECTION_CODE = 3;
 
+    private static final int HEADER_SIZE = 12;
+    private static final int SECTION_ENTRY_SIZE = 13;
+    private static final int CONST_ENTRY_SIZE = 10;
 
+    /**
+     * 读取编译后的程序
+     * <p> 文件内容整块读入堆内存后立即关闭文件，返回的程序不再引用文件，之后可以重新写入同一路径。
+     * 常量在第一次使用时才从读入的缓冲区解码，函数字节码和主程序字节码都是整块复制，不再逐字节装箱。</p>
+     * <p> 不使用内存映射：映射要等到被垃圾回收才解除，在 Windows 上期间文件一直被锁定，
+     * 而函数字节码无论如何都要复制出来执行，映射省不了多少。</p>
+     * @param program 文件路径
+     * @return 编译后的程序，读取失败时返回 null
+     */
     public static CompiledProgram read(String program) {
-
-        ArrayList<Obj> constants = new ArrayList<>();
-        ArrayList<Byte> instructions = new ArrayList<>();
-
-        FileInputStream fileInputStream;
+        ByteBuffer buf;
         try {
-            fileInputStream = new FileInputStream(program);
-        } catch (FileNotFoundException e) {
+            buf = ByteBuffer.wrap(Files.readAllBytes(Path.of(program)));
+        } catch (NoSuchFileException e) {
             System.out.println("file not found: " + e.getMessage());
             return null;
-        }
-        byte[] bytes ;
-        try {
-            bytes = fileInputStream.readAllBytes();
         } catch (IOException e) {
             System.out.println("read file error: " + e.getMessage());
-            try {
-                fileInputStream.close();
-            } catch (IOException e2) {
-                System.out.println("close file error: " + e2.getMessage());
-            }
+            return null;
+        }
+
+        int len = buf.limit();
+        if (len < 5 || buf.get(0) != 0x43 || buf.get(1) != 0x48 || buf.get(2) != 0x4F) {
+            System.out.println("所选文件不是Cho语言编译后的二进制文件");
             return null;
         }
         try {
-            fileInputStream.close();
-        } catch (IOException e) {
-            System.out.println("close file error: " + e.getMessage());
+            if (buf.get(3) == (byte) 0xFF) {
+                return readSections(buf, program);
+            }
+            return readV1(buf, program);
+        } catch (IndexOutOfBoundsException e) {
+            System.out.println("文件已损坏: " + program);
+            return null;
         }
-        int index = 0;
-        int len = bytes.length;
+    }
 
-        byte[] filetype = new byte[3];
-        filetype[0] = bytes[0];
-        filetype[1] = bytes[1];
-        filetype[2] = bytes[2];
-        if (filetype[0] != 0x43 || filetype[1] != 0x48 || filetype[2] != 0x4F) {
-            System.out.println("所选文件不是Cho语言编译后的二进制文件");
+    /**
+     * 读取 v2 格式：校验段表后按段表定位各段，只校验需要的段，其余的段跳过
+     */
+    private static CompiledProgram readSections(ByteBuffer buf, String program) {
+        int len = buf.limit();
+        int version = buf.getShort(4) & 0xFFFF;
+        if (version > VERSION) {
+            System.out.println("不支持的文件版本: " + version);
+            return null;
+        }
+        int sections = buf.getShort(6) & 0xFFFF;
+        if (crc(buf.slice(HEADER_SIZE, sections * SECTION_ENTRY_SIZE)) != buf.getInt(8)) {
+            System.out.println("文件已损坏: " + program);
             return null;
         }
-        index += 3;
 
-        byte[] constsLen = new byte[2];
-        constsLen[0] = bytes[3];
-        constsLen[1] = bytes[4];
-        int constsLenInt = readSignedInt(constsLen);
-        index += 2;
-        for (int i = 0; i < constsLenInt; i++) {
-            byte type = bytes[index];
-            index += 1;
+        ByteBuffer consts = null;
+        ByteBuffer funcs = null;
+        ByteBuffer code = null;
+        for (int i = 0; i < sections; i++) {
+            int entry = HEADER_SIZE + i * SECTION_ENTRY_SIZE;
+            byte id = buf.get(entry);
+            int off = buf.getInt(entry + 1);
+            int size = buf.getInt(entry + 5);
+            if (id != SECTION_CONSTANTS && id != SECTION_FUNCTIONS && id != SECTION_CODE) {
+                // 运行时用不到的段不校验，直接跳过
+                continue;
+            }
+            if (off < 0 || size < 0 || (long) off + size > len) {
+                throw new IndexOutOfBoundsException();
+            }
+            ByteBuffer section = buf.slice(off, size);
+            if (crc(section) != buf.getInt(entry + 9)) {
+                System.out.println("文件已损坏: " + program);
+                return null;
+            }
+            if (id == SECTION_CONSTANTS) {
+                consts = section;
+            } else if (id == SECTION_FUNCTIONS) {
+                funcs = section;
+            } else {
+                code = section;
+            }
+        }
+        if (consts == null || funcs == null || code == null) {
+            System.out.println("文件已损坏: " + program);
+            return null;
+        }
+        int count = consts.getInt(0);
+        if (count < 0 || 4 + (long) count * CONST_ENTRY_SIZE > consts.limit()
+                || !checkConstants(consts, funcs, count)) {
+            System.out.println("文件已损坏: " + program);
+            return null;
+        }
 
+        byte[] bytes = new byte[code.limit()];
+        code.get(0, bytes);
+        return new CompiledProgram(bytes, new SectionConstants(consts, funcs, count));
+    }
+
+    /**
+     * 检查每个常量的类型，以及字符串和函数的偏移、长度是否在所在的段内，
+     * 之后按需解码常量时不会越界
+     */
+    private static boolean checkConstants(ByteBuffer consts, ByteBuffer funcs, int count) {
+        for (int i = 0; i < count; i++) {
+            int entry = 4 + i * CONST_ENTRY_SIZE;
+            byte type = consts.get(entry);
+            int a = consts.getInt(entry + 2);
+            int b = consts.getInt(entry + 6);
             if (type == 0) {
-                byte[] intConst = new byte[4];
-                intConst[0] = bytes[index];
-                intConst[1] = bytes[index + 1];
-                intConst[2] = bytes[index + 2];
-                intConst[3] = bytes[index + 3];
-                int intConstInt = readSignedInt(intConst);
-                index += 4;
-                constants.add(new Int(intConstInt));
+                continue;
             }
+            int limit;
             if (type == 1) {
-                String str = "";
-                while (bytes[index] != 0) {
-                    str += (char) bytes[index];
-                    index += 1;
-                }
-                Str s = new Str(str);
-                index += 1;
-                constants.add(s);
+                limit = consts.limit();
+            } else if (type == 2) {
+                limit = funcs.limit();
+            } else {
+                return false;
             }
-            if (type == 2) {
-                byte[] compiledFunc = new byte[2];
-                compiledFunc[0] = bytes[index];
-                compiledFunc[1] = bytes[index + 1];
-                int compiledFuncLen = readSignedInt(compiledFunc);
-                index += 2;
+            if (a < 0 || b < 0 || (long) a + b > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-                int parasCount = bytes[index];
-                index += 1;
+    private static int crc(ByteBuffer section) {
+        CRC32 crc = new CRC32();
+        crc.update(section);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 按常量表定位并解码 v2 格式的常量，持有常量段和函数段直到程序不再使用
+     */
+    private static class SectionConstants implements CompiledProgram.ConstantLoader {
+        private final ByteBuffer consts;
+        private final ByteBuffer funcs;
+        private final int count;
 
-                ArrayList<Byte> compiledFuncBytes = new ArrayList<>();
+        SectionConstants(ByteBuffer consts, ByteBuffer funcs, int count) {
+            this.consts = consts;
+            this.funcs = funcs;
+            this.count = count;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
 
-                for (int j = 0; j < compiledFuncLen; j++) {
-                    compiledFuncBytes.add(bytes[index]);
+        @Override
+        public Obj load(int i) {
+            int entry = 4 + i * CONST_ENTRY_SIZE;
+            byte type = consts.get(entry);
+            int paramCount = consts.get(entry + 1) & 0xFF;
+            int a = consts.getInt(entry + 2);
+            int b = consts.getInt(entry + 6);
+            if (type == 0) {
+                return new Int(a);
+            }
+            if (type == 1) {
+                byte[] str = new byte[b];
+                consts.get(a, str);
+                return new Str(new String(str, StandardCharsets.UTF_8));
+            }
+            byte[] funcCode = new byte[b];
+            funcs.get(a, funcCode);
+            return new CompiledFunction(funcCode, paramCount);
+        }
+    }
+
+    /**
+     * 读取 v1 格式：扫描一遍常量区，记下每个常量的位置
+     */
+    private static CompiledProgram readV1(ByteBuffer buf, String program) {
+        int len = buf.limit();
+        int constsLen = buf.getShort(3) & 0xFFFF;
+        int[] offsets = new int[constsLen];
+        int index = 5;
+        for (int i = 0; i < constsLen; i++) {
+            offsets[i] = index;
+            byte type = buf.get(index);
+            index += 1;
+            if (type == 0) {
+                index += 4;
+            } else if (type == 1) {
+                while (buf.get(index) != 0) {
                     index += 1;
                 }
-
-                CompiledFunction cf = new CompiledFunction(compiledFuncBytes, parasCount);
-                constants.add(cf);
+                index += 1;
+            } else if (type == 2) {
+                index += 3 + (buf.getShort(index) & 0xFFFF);
+            } else {
+                System.out.println("未知的常量类型: " + type);
+                return null;
             }
         }
+        if (index > len) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        byte[] code = new byte[len - index];
+        buf.get(index, code);
+        return new CompiledProgram(code, new V1Constants(buf, offsets));
+    }
+
+    /**
+     * 从读入的文件内容中按需解码 v1 格式的常量
+     */
+    private static class V1Constants implements CompiledProgram.ConstantLoader {
+        private final ByteBuffer buf;
+        private final int[] offsets;
 
-        for (int i = index; i < len; i++) {
-            instructions.add(bytes[i]);
+        V1Constants(ByteBuffer buf, int[] offsets) {
+            this.buf = buf;
+            this.offsets = offsets;
         }
 
-        return new CompiledProgram(instructions,constants, new ArrayList<>());
+        @Override
+        public int size() {
+            return offsets.length;
+        }
+
+        @Override
+        public Obj load(int i) {
+            int index = offsets[i];
+            byte type = buf.get(index);
+            index += 1;
+            if (type == 0) {
+                return new Int(buf.getInt(index));
+            }
+            if (type == 1) {
+                int end = index;
+                while (buf.get(end) != 0) {
+                    end += 1;
+                }
+                byte[] str = new byte[end - index];
+                buf.get(index, str);
+                return new Str(new String(str, StandardCharsets.UTF_8));
+            }
+            int funcLen = buf.getShort(index) & 0xFFFF;
+            int paramCount = buf.get(index + 2) & 0xFF;
+            byte[] funcCode = new byte[funcLen];
+            buf.get(index + 3, funcCode);
+            return new CompiledFunction(funcCode, paramCount);
+        }
     }
 
+    /**
+     * 以 v2 格式写出编译后的程序，整个文件在内存中生成后一次写入
+     */
     public static void write(CompiledProgram program, String path) throws IOException {
+        Files.write(Path.of(path), toBytes(program));
+    }
+
+    /**
+     * 生成 v2 格式的文件内容
+     * @return 文件内容
+     */
+    public static byte[] toBytes(CompiledProgram program) {
         ArrayList<Obj> constants = program.consts();
-        ArrayList<Byte> instructions = program.instructions();
-        FileOutputStream fileOutputStream ;
-        try {
-            fileOutputStream = new FileOutputStream(path);
-        } catch (FileNotFoundException e) {
-            System.out.println("file not found: " + e.getMessage());
-            return;
-        }
-
-        int constsNum = constants.size();
-        byte[] filetype = new byte[3];
-        filetype[0] = (byte) 0x43;
-        filetype[1] = (byte) 0x48;
-        filetype[2] = (byte) 0x4F;
-        fileOutputStream.write(filetype);
-        fileOutputStream.write(getBytes(constsNum, 2));
-        
-        for (int i = 0; i < constsNum; i++) {
+        byte[] code = program.code();
+        int n = constants.size();
+
+        // 先计算各段长度，一次分配好缓冲区
+        byte[][] strings = new byte[n][];
+        int stringBytes = 0;
+        int functionBytes = 0;
+        for (int i = 0; i < n; i++) {
             Obj o = constants.get(i);
-            if (o instanceof Int) {
-                fileOutputStream.write((byte) 0);
-                Int intConst = (Int) o;
-                fileOutputStream.write(getBytes(intConst.getValue(), 4));
-            }
             if (o instanceof Str) {
-                fileOutputStream.write((byte) 1);
-                Str str = (Str) o;
-                fileOutputStream.write(str.getValue().getBytes());
-                fileOutputStream.write((byte) 0);
+                strings[i] = ((Str) o).getValue().getBytes(StandardCharsets.UTF_8);
+                stringBytes += strings[i].length;
+            } else if (o instanceof CompiledFunction) {
+                functionBytes += ((CompiledFunction) o).getInstructions().length;
             }
-            if (o instanceof CompiledFunction) {
-                fileOutputStream.write((byte) 2);
-                CompiledFunction cf = (CompiledFunction) o;
-                fileOutputStream.write(getBytes(cf.getInstructions().size(), 2));
-                fileOutputStream.write(getBytes(cf.paramCount(), 1));
-                for (int j = 0; j < cf.getInstructions().size(); j++) {
-                    fileOutputStream.write(cf.getInstructions().get(j));
-                }
-            }
-        }
-        for (int i = 0; i < instructions.size(); i++) {
-            fileOutputStream.write(instructions.get(i).byteValue());
         }
+        int sections = 3;
+        int tableLen = 4 + n * CONST_ENTRY_SIZE;
+        int constOff = HEADER_SIZE + sections * SECTION_ENTRY_SIZE;
+        int constLen = tableLen + stringBytes;
+        int funcOff = constOff + constLen;
+        int codeOff = funcOff + functionBytes;
 
-        fileOutputStream.close();
+        ByteBuffer out = ByteBuffer.allocate(codeOff + code.length);
+        out.put((byte) 0x43).put((byte) 0x48).put((byte) 0x4F).put((byte) 0xFF);
+        out.putShort((short) VERSION);
+        out.putShort((short) sections);
+        out.putInt(0);
+        // 段表最后填写，先跳过
+        out.position(constOff);
 
-    }
-    private static byte[] getBytes(int num, int len) {
-        byte[]  bytes = new byte[len];
-        int j = 0;
-        for (int i = len - 1; i >= 0; i--) {
-            bytes[j++] = ((byte) (num >> (i * 8)));
+        out.putInt(n);
+        int strPos = tableLen;
+        int funcPos = 0;
+        for (int i = 0; i < n; i++) {
+            Obj o = constants.get(i);
+            if (o instanceof Int) {
+                out.put((byte) 0).put((byte) 0).putInt(((Int) o).getValue()).putInt(0);
+            } else if (o instanceof Str) {
+                out.put((byte) 1).put((byte) 0).putInt(strPos).putInt(strings[i].length);
+                strPos += strings[i].length;
+            } else {
+                CompiledFunction cf = (CompiledFunction) o;
+                int funcLen = cf.getInstructions().length;
+                out.put((byte) 2).put((byte) cf.paramCount()).putInt(funcPos).putInt(funcLen);
+                funcPos += funcLen;
+            }
         }
-        return bytes;
-    }
-
-    private static int readSignedInt(byte[] bytes) {
-        if (bytes == null) {
-            return 0;
+        for (byte[] str : strings) {
+            if (str != null) {
+                out.put(str);
+            }
         }
-        int result = 0;
-
-        for (int i = 0; i < bytes.length; i++) {
-            
-            result = (result << 8) | (bytes[i] & 0xFF);
+        for (Obj o : constants) {
+            if (o instanceof CompiledFunction) {
+                out.put(((CompiledFunction) o).getInstructions());
+            }
         }
+        out.put(code);
 
-        if ((result & (1 << (bytes.length * 8 - 1))) != 0) {
-            result -= (1 << (bytes.length * 8));
-        }
+        out.position(HEADER_SIZE);
+        section(out, SECTION_CONSTANTS, constOff, constLen);
+        section(out, SECTION_FUNCTIONS, funcOff, functionBytes);
+        section(out, SECTION_CODE, codeOff, code.length);
+        out.putInt(8, crc(out.slice(HEADER_SIZE, sections * SECTION_ENTRY_SIZE)));
+        return out.array();
+    }
 
-        return result;
+    private static void section(ByteBuffer out, byte id, int off, int len) {
+        out.put(id).putInt(off).putInt(len).putInt(crc(out.slice(off, len)));
     }
 }
@@ -3,10 +3,22 @@ package core.is;
 import java.util.ArrayList;
 import java.util.HashMap;
 
+import core.env.CompiledFunction;
+
 public class InstructionSet {
-    private HashMap<Opcode, Defination> codes = new HashMap<>();
+    private static final HashMap<Opcode, Defination> codes = new HashMap<>();
+
+    /**
+     * 按 ordinal 缓存的操作码表，避免每次取指都调用 Opcode.values() 复制数组
+     */
+    private static final Opcode[] OPCODES = Opcode.values();
 
-    public InstructionSet() {
+    /**
+     * 按 ordinal 预先计算好的指令长度（操作码 + 操作数字节数）
+     */
+    private static final int[] LENGTHS = new int[OPCODES.length];
+
+    static {
         codes.put(Opcode.Nop, new Defination("Nop", 0));
         codes.put(Opcode.Load, new Defination("Load", 2));
         codes.put(Opcode.Add, new Defination("Add", 0));
@@ -45,19 +57,35 @@ public class InstructionSet {
         codes.put(Opcode.Assign, new Defination("Assign", 2));
         codes.put(Opcode.Allocate, new Defination("Allocate", 2));
         codes.put(Opcode.SetArray, new Defination("SetArray", 0));
+        codes.put(Opcode.AddLocals, new Defination("AddLocals", 2, 2));
+        codes.put(Opcode.LtLocalConstJf, new Defination("LtLocalConstJf", 2, 2, 2));
+        codes.put(Opcode.SetLocalNoPush, new Defination("SetLocalNoPush", 2));
+        codes.put(Opcode.SetGlobalNoPush, new Defination("SetGlobalNoPush", 2));
+
+        for (Opcode code : OPCODES) {
+            Defination def = codes.get(code);
+            int len = 1;
+            for (int i = 0; i < def.operandCount(); i++) {
+                len += def.len(i);
+            }
+            LENGTHS[code.ordinal()] = len;
+        }
     }
 
     private Defination getDefine(Opcode code){
         return codes.get(code);
     }
 
-    public int lengthOf(Opcode code){
-        Defination def = getDefine(code);
-        int ret = 1;
-        for (int i = 0; i < def.operandCount(); i++) {
-            ret += def.len(i);
-        }
-        return ret;
+    public static Opcode opcodeOf(int ordinal) {
+        return OPCODES[ordinal];
+    }
+
+    public static int lengthOf(int ordinal) {
+        return LENGTHS[ordinal];
+    }
+
+    public static int lengthOf(Opcode code){
+        return LENGTHS[code.ordinal()];
     }
 
     public ArrayList<Byte> encode(Opcode code, int ... operands){
@@ -76,18 +104,22 @@ public class InstructionSet {
     }
 
     public ArrayList<String> decode(ArrayList<Byte> bytes){
+        return decode(CompiledFunction.toBytes(bytes));
+    }
+
+    public ArrayList<String> decode(byte[] bytes){
         ArrayList<String> ret = new ArrayList<>();
 
-        for (int i = 0; i < bytes.size(); ) {
+        for (int i = 0; i < bytes.length; ) {
             String instr = String.format("%04X", i) + " ";
-            Opcode c = Opcode.values()[bytes.get(i)];
+            Opcode c = OPCODES[bytes[i]];
 
-            instr += String.format("  %02X", bytes.get(i).byteValue());
+            instr += String.format("  %02X", bytes[i]);
             i ++;
             Defination def = getDefine(c);
             int j = 0;
             if (def.operandCount() == 0) {
-                instr = instr + "             ";
+                instr = instr + "                   ";
                 
                 instr += def.name();
                 ret.add(instr);
@@ -95,19 +127,17 @@ public class InstructionSet {
             }
 
             
-            for (j = 0; j < def.operandCount(); j++) {
-                for (int k = 0; k < def.len(j); k++) {
-                    instr = instr + " " + String.format("%02X", bytes.get(i + k).byteValue());
-                }
+            for (int k = 0; k < lengthOf(c) - 1; k++) {
+                instr = instr + " " + String.format("%02X", bytes[i + k]);
             }
 
-            for (j = lengthOf(c); j < 5; j++) {
+            for (j = lengthOf(c); j < 7; j++) {
                 instr = instr + "   ";
             }
 
             instr += " " + def.name();
             for (j = 0; j < def.operandCount(); j++) {
-                instr = instr + " " + getInt(new ArrayList<>(bytes.subList(i, i + def.len(j))));
+                instr = instr + " " + getInt(bytes, i, def.len(j));
                 i += def.len(j);
             }
             ret.add(instr);
@@ -123,10 +153,10 @@ public class InstructionSet {
         return bytes;
     }
 
-    private int getInt(ArrayList<Byte> bytes) {
+    private int getInt(byte[] bytes, int start, int len) {
         int num = 0;
-        for (int i = 0; i < bytes.size(); i++) {
-            int b = bytes.get(i) & 0xFF;
+        for (int i = start; i < start + len; i++) {
+            int b = bytes[i] & 0xFF;
             num = (num << 8) + b;
         }
         return num;
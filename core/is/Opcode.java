@@ -42,5 +42,10 @@ public enum Opcode {
     GetFree,
     SetFree,
     CurClosure,
-    SetArray
+    SetArray,
+
+    AddLocals,
+    LtLocalConstJf,
+    SetLocalNoPush,
+    SetGlobalNoPush
 }
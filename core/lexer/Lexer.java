@@ -1,8 +1,12 @@
 package core.lexer;
 
 import core.token.Token;
+import core.token.TokenBuffer;
 import core.token.TokenType;
-import java.util.HashMap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
 
 /**
  * Lexer 类用于对字符串进行词法分析，通过nextToken 方法获取下一个 token
@@ -15,27 +19,47 @@ import java.util.HashMap;
  * <pre>
  *   Token token = lexer.nextToken();
  * </pre>
+ * <p> 直接扫描 char[]，只记录 token 的起止位置，最后一次性截取 token 值；
+ * 行号只在越过换行符时更新，列号由当前位置与行首位置相减得到。</p>
+ * <p> 也可以从 Reader 流式读取：缓冲区只保留当前 token 起点之后的内容，
+ * 用满时丢弃已分析的部分，只有单个 token 超过缓冲区一半时才扩容，
+ * 因此内存占用与源文件大小无关。</p>
  */
 public class Lexer {
     /**
-     * 用于存储要分析的代码字符串
+     * 流式读取时缓冲区的初始大小
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * 源代码输入流，从字符串构造时为 null
      */
-    private String str;
+    private Reader reader;
 
     /**
-     * 用于记录当前分析的位置
+     * 缓冲区，buf[0] 对应源代码中的位置 base
      */
-    private int curpos;
+    private char[] buf;
 
     /**
-     * 用于记录下一个分析的位置
+     * 缓冲区起始位置在源代码中的偏移
      */
-    private int nextpos;
+    private int base;
 
-    /** 
-     * 用于记录当前分析的字符
-    */
-    private char ch;
+    /**
+     * 缓冲区中有效字符的数量
+     */
+    private int limit;
+
+    /**
+     * 输入流是否已读完
+     */
+    private boolean eof;
+
+    /**
+     * 用于记录当前分析的位置（源代码中的绝对位置）
+     */
+    private int pos;
 
     /**
      * 用于记录当前分析的行号
@@ -43,185 +67,239 @@ public class Lexer {
     private int line;
 
     /**
-     * 用于记录当前分析的列号
+     * 当前行行首换行符的位置，列号为 pos - lineStart + 1
      */
-    private int column;
+    private int lineStart;
 
     /**
-     * 关键字表，用于判断是否为关键字，并返回对应的 TokenType
+     * 最近一次扫描到的 token：固定的值（运算符、分隔符等）或值在源代码中的范围，以及结束位置
      */
-    private static HashMap<String, TokenType> keywords = new HashMap<>();
+    private String tokText;
+    private int tokStart;
+    private int tokLen;
+    private int tokEnd;
 
     /**
      * 构造函数
      * @param str 要分析的代码字符串
      */
     public Lexer(String str) {
-        this.str = str;
-        this.curpos = 0;
-        this.nextpos = 0;
+        this.buf = str.toCharArray();
+        this.limit = buf.length;
+        this.eof = true;
         this.line = 1;
-        this.column = 1;
-        this.ch = 0;
+    }
 
-        if (str.length() > 0) {
-            this.ch = str.charAt(0);
-            this.nextpos = 1;
-        }
+    /**
+     * 从输入流读取代码，使用默认大小的缓冲区
+     * @param reader 代码输入流，由调用者负责关闭
+     */
+    public Lexer(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
 
-        initKeywords();
+    /**
+     * 从输入流读取代码
+     * @param reader 代码输入流，由调用者负责关闭
+     * @param bufferSize 缓冲区初始大小
+     */
+    public Lexer(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buf = new char[Math.max(bufferSize, 16)];
+        this.line = 1;
     }
 
     /**
-     * 复制构造函数
+     * 复制构造函数，只适用于从字符串构造的词法分析器
      * @param lexer 词法分析器
      */
     public Lexer(Lexer lexer) {
-        this.str = lexer.str;
-        this.curpos = lexer.curpos; 
-        this.nextpos = lexer.nextpos;
+        this.reader = lexer.reader;
+        this.buf = lexer.buf;
+        this.base = lexer.base;
+        this.limit = lexer.limit;
+        this.eof = lexer.eof;
+        this.pos = lexer.pos;
         this.line = lexer.line;
-        this.column = lexer.column;
-        this.ch = lexer.ch;
-
-        initKeywords();
+        this.lineStart = lexer.lineStart;
     }
 
     /**
-     * 初始化关键字表
+     * 获取位置 p 处的字符，超出代码末尾时返回 0
      */
-    private void initKeywords() {
-        keywords.put("function", TokenType.FUNCTION);
-        keywords.put("var", TokenType.VAR);
-        keywords.put("if", TokenType.IF);
-        keywords.put("else", TokenType.ELSE);
-        keywords.put("return", TokenType.RETURN);
-        keywords.put("true", TokenType.TRUE);
-        keywords.put("false", TokenType.FALSE);
-        keywords.put("while", TokenType.WHILE);
-        keywords.put("for", TokenType.FOR);
-        keywords.put("break", TokenType.BREAK);
-        keywords.put("continue", TokenType.CONTINUE);
+    private char at(int p) {
+        int i = p - base;
+        return i < limit ? buf[i] : fill(p);
     }
 
     /**
-     * 读取下一个字符，并更新ch，curpos，nextpos，column，line
+     * 从输入流读取代码直到位置 p 进入缓冲区。当前 token 起点 pos 之前的内容可以丢弃
+     * @return 位置 p 处的字符，输入流已读完时返回 0
      */
-    private void readChar() {
-        if (nextpos < str.length()) {
-            ch = str.charAt(nextpos);
-        } else {
-            ch = 0;
+    private char fill(int p) {
+        while (p - base >= limit && !eof) {
+            if (limit == buf.length) {
+                int keep = pos - base;
+                if (keep >= buf.length / 2) {
+                    System.arraycopy(buf, keep, buf, 0, limit - keep);
+                    limit -= keep;
+                    base = pos;
+                } else {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+            }
+            try {
+                int n = reader.read(buf, limit, buf.length - limit);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    limit += n;
+                }
+            } catch (IOException e) {
+                System.out.println("read file error: " + e.getMessage());
+                eof = true;
+            }
         }
+        int i = p - base;
+        return i < limit ? buf[i] : 0;
+    }
 
-        curpos = nextpos;
-        nextpos++;
-        column++;
-        if (ch == '\n') {
-            line++;
-            column = 1;
-        }
+    private String slice(int start, int n) {
+        return new String(buf, start - base, n);
     }
 
     /**
-     * 获取下一个字符，但不更新相关变量
-     * @return 下一个字符
+     * 根据关键字的长度和字符判断标识符是否为关键字
+     * @param start 标识符起始位置
+     * @param n 标识符长度
+     * @return 对应的 TokenType，不是关键字时返回 null
      */
-    private char peekChar() {
-        if (nextpos >= str.length()) { 
-            return 0;
+    private TokenType keyword(int start, int n) {
+        switch (n) {
+            case 2:
+                return matches(start, "if") ? TokenType.IF : null;
+            case 3:
+                if (matches(start, "var")) return TokenType.VAR;
+                return matches(start, "for") ? TokenType.FOR : null;
+            case 4:
+                if (matches(start, "true")) return TokenType.TRUE;
+                return matches(start, "else") ? TokenType.ELSE : null;
+            case 5:
+                switch (buf[start - base]) {
+                    case 'f':
+                        return matches(start, "false") ? TokenType.FALSE : null;
+                    case 'w':
+                        return matches(start, "while") ? TokenType.WHILE : null;
+                    case 'b':
+                        return matches(start, "break") ? TokenType.BREAK : null;
+                    default:
+                        return null;
+                }
+            case 6:
+                return matches(start, "return") ? TokenType.RETURN : null;
+            case 8:
+                if (matches(start, "function")) return TokenType.FUNCTION;
+                return matches(start, "continue") ? TokenType.CONTINUE : null;
+            default:
+                return null;
         }
+    }
 
-        return str.charAt(nextpos);
+    private boolean matches(int start, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (buf[start - base + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
-     * 从str的当前位置curpos读取指定长度的字符串
-     * @param len 要读取的长度
-     * @return 读取的字符串
+     * 把当前位置移动到 p，如果 p 处是换行符则更新行号
      */
-    private String readString(int len) {
-        String res = "";
-        for (int i = 0; i < len; i++) {
-            res += ch;
-            readChar();
+    private void moveTo(int p) {
+        pos = p;
+        if (at(p) == '\n') {
+            line++;
+            lineStart = p;
         }
-        return res;
     }
 
     /**
-     *  从str的当前位置curpos读取一个字符串常量
-     * @return 读取的字符串
+     * 当前 token 占 n 个字符，值使用固定的字符串常量
      */
-    private String readString() {
-        String res = "";
-        readChar();
-        while (ch != '\"' && ch != 0) {
-            res += ch;
-            readChar();
-        }
-        readChar();
-        return res;
+    private TokenType fixed(TokenType type, String text, int n) {
+        tokText = text;
+        tokStart = pos;
+        tokLen = n;
+        tokEnd = pos + n;
+        return type;
     }
 
     /**
-     * 从str的当前位置curpos读取一个标识符
-     * @return 读取的标识符
+     * 当前 token 的值是源代码中 [start, start + n) 的部分，结束后移动到 end
      */
-    private String readIdentifier() {
-        String res = "";
-        while (isLetter() || isDigit()) {
-            res += ch;
-            readChar();
-        }
-        return res;
+    private TokenType span(TokenType type, int start, int n, int end) {
+        tokText = null;
+        tokStart = start;
+        tokLen = n;
+        tokEnd = end;
+        return type;
     }
 
     /**
-     * 从str的当前位置curpos读取一个数字
-     * @return 读取的数字
+     *  从当前位置扫描一个字符串常量，只记录其范围
      */
-    private String readNumber() {
-        String res = "";
-        while (isDigit()) {
-            res += ch;
-            readChar();
+    private TokenType scanString() {
+        int start = pos + 1;
+        int p = start;
+        char c = at(p);
+        while (c != '\"' && c != 0) {
+            if (c == '\n') {
+                line++;
+                lineStart = p;
+            }
+            c = at(++p);
         }
-        return res;
+        return span(TokenType.STRING, start, p - start, p + 1);
     }
 
     /**
      * 跳过注释
      */
     private void skipComment() {
-        while (ch != '\n' && ch != 0) {
-            readChar();
+        char c = at(pos);
+        while (c != '\n' && c != 0) {
+            c = at(++pos);
         }
+        moveTo(pos);
     }
-    
+
     /**
      * 跳过空白字符
      */
     private void skipWhitespace() {
-        while (ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r') {
-            readChar();
+        char c = at(pos);
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            moveTo(pos + 1);
+            c = at(pos);
         }
     }
 
     /**
-     * 判断当前字符ch是否是字母或者下划线
+     * 判断字符是否是字母或者下划线
      * @return 是否是字母或者下划线
      */
-    private boolean isLetter() {
-        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_';
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
     }
-    
+
     /**
-     * 判断当前字符ch是否是数字
+     * 判断字符是否是数字
      * @return 是否是数字
      */
-    private boolean isDigit() {
-        return ch >= '0' && ch <= '9';
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 
     /**
@@ -229,105 +307,106 @@ public class Lexer {
      * @return 下一个 token
      */
     public Token nextToken() {
-        skipWhitespace();
-        Token token = null;
-        switch (ch) {
+        TokenType type = scan();
+        String value = tokText != null ? tokText : slice(tokStart, tokLen);
+        moveTo(tokEnd);
+        return new Token(type, value, line, pos - lineStart + 1);
+    }
+
+    /**
+     * 一次性分析全部代码，结果存放在紧凑的 TokenBuffer 中，不为每个 token 创建对象
+     * @return 以 EOF 结尾的 token 序列
+     */
+    public TokenBuffer tokenize() {
+        TokenBuffer tokens = new TokenBuffer();
+        while (true) {
+            TokenType type = scan();
+            int start = tokText != null
+                    ? tokens.appendText(tokText)
+                    : tokens.appendText(buf, tokStart - base, tokLen);
+            moveTo(tokEnd);
+            tokens.add(type, start, tokLen, line, pos - lineStart + 1);
+            if (type == TokenType.EOF) {
+                return tokens;
+            }
+        }
+    }
+
+    /**
+     * 扫描下一个 token，只记录其类型、值的范围和结束位置，不移动当前位置，
+     * 以便调用者在缓冲区被覆盖前取出 token 的值
+     * @return token 类型
+     */
+    private TokenType scan() {
+        while (true) {
+            skipWhitespace();
+            if (at(pos) == '/' && at(pos + 1) == '/') {
+                skipComment();
+                continue;
+            }
+            break;
+        }
+        char c = at(pos);
+        char next = at(pos + 1);
+        switch (c) {
             case '+':
-                token = new Token(TokenType.PLUS, readString(1), line, column);
-                break;
+                return fixed(TokenType.PLUS, "+", 1);
             case '-':
-                token = new Token(TokenType.MINUS, readString(1), line, column);
-                break;
+                return fixed(TokenType.MINUS, "-", 1);
             case '*':
-                token = new Token(TokenType.ASTERISK, readString(1), line, column);
-                break;
+                return fixed(TokenType.ASTERISK, "*", 1);
             case '/':
-                if (peekChar() == '/') {
-                    skipComment();
-                    token = nextToken();
-                } else {
-                    token = new Token(TokenType.SLASH, readString(1), line, column);
-                }
-                break;
+                return fixed(TokenType.SLASH, "/", 1);
             case '(':
-                token = new Token(TokenType.LPAREN, readString(1), line, column);
-                break;
+                return fixed(TokenType.LPAREN, "(", 1);
             case ')':
-                token = new Token(TokenType.RPAREN, readString(1), line, column);
-                break;
+                return fixed(TokenType.RPAREN, ")", 1);
             case '{':
-                token = new Token(TokenType.LBRACE, readString(1), line, column);
-                break;
+                return fixed(TokenType.LBRACE, "{", 1);
             case '}':
-                token = new Token(TokenType.RBRACE, readString(1), line, column);
-                break;
+                return fixed(TokenType.RBRACE, "}", 1);
             case '[':
-                token = new Token(TokenType.LBRACKET, readString(1), line, column);
-                break;
+                return fixed(TokenType.LBRACKET, "[", 1);
             case ']':
-                token = new Token(TokenType.RBRACKET, readString(1), line, column);
-                break;
+                return fixed(TokenType.RBRACKET, "]", 1);
             case ';':
-                token = new Token(TokenType.SEMICOLON, readString(1), line, column);
-                break;
+                return fixed(TokenType.SEMICOLON, ";", 1);
             case ',':
-                token = new Token(TokenType.COMMA, readString(1), line, column);
-                break;
+                return fixed(TokenType.COMMA, ",", 1);
             case ':':
-                token = new Token(TokenType.COLON, readString(1), line, column);
-                break;
+                return fixed(TokenType.COLON, ":", 1);
             case '=':
-                if (peekChar() == '=') {
-                    token = new Token(TokenType.EQ, readString(2), line, column);
-                } else {
-                    token = new Token(TokenType.ASSIGN, readString(1), line, column);
-                }
-                break;
+                return next == '=' ? fixed(TokenType.EQ, "==", 2) : fixed(TokenType.ASSIGN, "=", 1);
             case '!':
-                if (peekChar() == '=') {
-                    token = new Token(TokenType.NOT_EQ, readString(2), line, column);
-                } else {
-                    token = new Token(TokenType.BANG, readString(1), line, column);
-                }
-                break;
+                return next == '=' ? fixed(TokenType.NOT_EQ, "!=", 2) : fixed(TokenType.BANG, "!", 1);
             case '<':
-                if (peekChar() == '=') {
-                    token = new Token(TokenType.LE, readString(2), line, column);
-                } else {
-                    token = new Token(TokenType.LT, readString(1), line, column);
-                }
-                break;
+                return next == '=' ? fixed(TokenType.LE, "<=", 2) : fixed(TokenType.LT, "<", 1);
             case '>':
-                if (peekChar() == '=') {
-                    token = new Token(TokenType.GE, readString(2), line, column);
-                } else {
-                    token = new Token(TokenType.GT, readString(1), line, column);
-                }
-                break;
+                return next == '=' ? fixed(TokenType.GE, ">=", 2) : fixed(TokenType.GT, ">", 1);
             case '\"':
-                token = new Token(TokenType.STRING, readString(), line, column);
-                break;
+                return scanString();
             case 0:
-                token = new Token(TokenType.EOF, "", line, column);
-                break;
+                return fixed(TokenType.EOF, "", 0);
             default:
-                if (isLetter()) {
-                    String ident = readIdentifier();
-                    if (keywords.containsKey(ident)) {
-                        token = new Token(keywords.get(ident), ident, line, column);
-                    } else {
-                        token = new Token(TokenType.IDENT, ident, line, column);
-                    }
-                } else if (isDigit()) {
-                    token = new Token(TokenType.INT, readNumber(), line, column);
-                } else {
-                    token = new Token(TokenType.ILLEGAL, readString(1), line, column);
-                }
                 break;
         }
 
-        return token;
+        int p = pos;
+        if (isLetter(c)) {
+            char d = c;
+            while (isLetter(d) || isDigit(d)) {
+                d = at(++p);
+            }
+            TokenType kw = keyword(pos, p - pos);
+            return span(kw != null ? kw : TokenType.IDENT, pos, p - pos, p);
+        }
+        if (isDigit(c)) {
+            char d = c;
+            while (isDigit(d)) {
+                d = at(++p);
+            }
+            return span(TokenType.INT, pos, p - pos, p);
+        }
+        return span(TokenType.ILLEGAL, pos, 1, pos + 1);
     }
 }
-
-
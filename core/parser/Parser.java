@@ -27,10 +27,12 @@ import core.ast.statement.Statement;
 import core.ast.statement.VarStatement;
 import core.lexer.Lexer;
 import core.token.Token;
+import core.token.TokenBuffer;
 import core.token.TokenType;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -43,6 +45,13 @@ public class Parser {
     private Token curToken;
     private Token peekToken;
 
+    /**
+     * 紧凑 token 序列模式下的 token 序列，以及当前 token 和下一个 token 的下标
+     */
+    private TokenBuffer tokens;
+    private int cur;
+    private int peek;
+
     private static HashMap<TokenType, Precedence> tokenPrecedence = new HashMap<>();
 
     private HashMap<TokenType, Supplier<Expression>> prefixParseFns = new HashMap<>();
@@ -53,6 +62,17 @@ public class Parser {
         init();
     }
 
+    /**
+     * 按下标读取紧凑 token 序列，前瞻不创建 Token 对象，同一序列可以重复解析
+     * @param tokens 以 EOF 结尾的 token 序列，见 {@link Lexer#tokenize()}
+     */
+    public Parser(TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.cur = -1;
+        this.peek = -1;
+        init();
+    }
+
     private void init() {
         tokenPrecedence.put(TokenType.EQ, Precedence.EQUALS);
         tokenPrecedence.put(TokenType.NOT_EQ, Precedence.EQUALS);
@@ -119,16 +139,54 @@ public class Parser {
     }
 
     private void nextToken() {
+        if (tokens != null) {
+            cur = peek;
+            if (peek < tokens.size() - 1) {
+                peek++;
+            }
+            return;
+        }
         curToken = peekToken;
         peekToken = lexer.nextToken();
     }
 
     private boolean curTokenIs(TokenType t) {
-        return curToken.type() == t;
+        return curType() == t;
     }
 
     private boolean peekTokenIs(TokenType t) {
-        return peekToken.type() == t;
+        return peekType() == t;
+    }
+
+    private TokenType curType() {
+        return tokens != null ? tokens.type(cur) : curToken.type();
+    }
+
+    private TokenType peekType() {
+        return tokens != null ? tokens.type(peek) : peekToken.type();
+    }
+
+    private String curValue() {
+        return tokens != null ? tokens.value(cur) : curToken.value();
+    }
+
+    private String peekValue() {
+        return tokens != null ? tokens.value(peek) : peekToken.value();
+    }
+
+    private int peekLine() {
+        return tokens != null ? tokens.line(peek) : peekToken.line();
+    }
+
+    private int peekColumn() {
+        return tokens != null ? tokens.column(peek) : peekToken.column();
+    }
+
+    /**
+     * 当前 token 对象，紧凑 token 序列模式下只在构造语法树节点时才生成
+     */
+    private Token curToken() {
+        return tokens != null ? tokens.token(cur) : curToken;
     }
 
     private boolean expectPeek(TokenType t) {
@@ -140,15 +198,15 @@ public class Parser {
     }
 
     private Precedence peekPrecedence() {
-        if (tokenPrecedence.containsKey(peekToken.type())) {
-            return tokenPrecedence.get(peekToken.type());
+        if (tokenPrecedence.containsKey(peekType())) {
+            return tokenPrecedence.get(peekType());
         }
         return Precedence.LOWEST;
     }
 
     private Precedence curPrecedence() {
-        if (tokenPrecedence.containsKey(curToken.type())) {
-            return tokenPrecedence.get(curToken.type());
+        if (tokenPrecedence.containsKey(curType())) {
+            return tokenPrecedence.get(curType());
         }
         return Precedence.LOWEST;
     }
@@ -167,7 +225,7 @@ public class Parser {
     }
 
     private Statement parseStatement() {
-        switch (curToken.type()) {
+        switch (curType()) {
             case VAR:
                 return parseVarStatement();
             case RETURN:
@@ -182,36 +240,36 @@ public class Parser {
     }
 
     private BreakStatement parseBreakStatement() {
-        BreakStatement breakStatement = new BreakStatement(curToken);
+        BreakStatement breakStatement = new BreakStatement(curToken());
         nextToken();
         return breakStatement;
     }
 
     private ContinueStatement parseContinueStatement() {
-        ContinueStatement continueStatement = new ContinueStatement(curToken);
+        ContinueStatement continueStatement = new ContinueStatement(curToken());
         nextToken();
         return continueStatement;
     }
 
     private VarStatement parseVarStatement() {
-        VarStatement varStatement = new VarStatement(curToken);
+        VarStatement varStatement = new VarStatement(curToken());
 
         if (!expectPeek(TokenType.IDENT)) {
-            addError("expected identifier but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected identifier but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
         varStatement.setIdentifier(
-                new Identifier(curToken, curToken.value()));
+                new Identifier(curToken(), curValue()));
 
         if (peekTokenIs(TokenType.SEMICOLON)) {
             return varStatement;
         }
 
         if (!expectPeek(TokenType.ASSIGN)) {
-            addError("expected \"=\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \"=\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -220,8 +278,8 @@ public class Parser {
         Expression expr = parseExpression(Precedence.LOWEST);
 
         if (expr == null) {
-            addError("expected expression but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected expression but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -232,8 +290,8 @@ public class Parser {
         varStatement.setValue(expr);
 
         if (!expectPeek(TokenType.SEMICOLON)) {
-            addError("expected \";\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \";\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -241,23 +299,23 @@ public class Parser {
     }
 
     private ReturnStatement parseReturnStatement() {
-        ReturnStatement returnStatement = new ReturnStatement(curToken);
+        ReturnStatement returnStatement = new ReturnStatement(curToken());
 
         nextToken();
 
         Expression expr = parseExpression(Precedence.LOWEST);
 
         if (expr == null) {
-            addError("expected expression but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected expression but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
         returnStatement.setRet(expr);
 
         if (!expectPeek(TokenType.SEMICOLON)) {
-            addError("expected \";\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \";\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -265,13 +323,13 @@ public class Parser {
     }
 
     private ExpressionStatement parseExpressionStatement() {
-        ExpressionStatement es = new ExpressionStatement(curToken);
+        ExpressionStatement es = new ExpressionStatement(curToken());
 
         Expression expr = parseExpression(Precedence.LOWEST);
 
         if (expr == null) {
-            addError("expected expression but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected expression but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -285,23 +343,23 @@ public class Parser {
     }
 
     private Expression parseExpression(Precedence precedence) {
-        if (!prefixParseFns.containsKey(curToken.type())) {
-            addError("expected expression but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+        if (!prefixParseFns.containsKey(curType())) {
+            addError("expected expression but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
-        Supplier<Expression> prefixFn = prefixParseFns.get(curToken.type());
+        Supplier<Expression> prefixFn = prefixParseFns.get(curType());
 
         Expression left = prefixFn.get();
 
         while (!curTokenIs(TokenType.SEMICOLON) && precedence.compareTo(peekPrecedence()) < 0) {
-            if (!infixParseFns.containsKey(peekToken.type())) {
-                addError("expected expression but got " + peekToken.value()
-                        + " in line " + peekToken.line() + " column " + peekToken.column());
+            if (!infixParseFns.containsKey(peekType())) {
+                addError("expected expression but got " + peekValue()
+                        + " in line " + peekLine() + " column " + peekColumn());
                 return left;
             }
-            Function<Expression, Expression> infixFn = infixParseFns.get(peekToken.type());
+            Function<Expression, Expression> infixFn = infixParseFns.get(peekType());
             nextToken();
             Expression right = infixFn.apply(left);
             left = right;
@@ -310,7 +368,7 @@ public class Parser {
     }
 
     private Expression parseInfixExpression(Expression left) {
-        InfixExpression expr = new InfixExpression(curToken, left, curToken.value());
+        InfixExpression expr = new InfixExpression(curToken(), left, curValue());
 
         Precedence precedence = curPrecedence();
         nextToken();
@@ -321,7 +379,7 @@ public class Parser {
     }
 
     private Expression parsePrefixExpression() {
-        PrefixExpression expr = new PrefixExpression(curToken, curToken.value());
+        PrefixExpression expr = new PrefixExpression(curToken(), curValue());
         nextToken();
 
         expr.setRight(parseExpression(Precedence.PREFIX));
@@ -330,23 +388,23 @@ public class Parser {
     }
 
     private Expression parseIdentifier() {
-        return new Identifier(curToken, curToken.value());
+        return new Identifier(curToken(), curValue());
     }
 
     private Expression parseIntegerLiteral() {
-        return new IntegerLiteral(curToken, Integer.parseInt(curToken.value()));
+        return new IntegerLiteral(curToken(), Integer.parseInt(curValue()));
     }
 
     private Expression parseBooleanLiteral() {
-        return new BooleanLiteral(curToken, curTokenIs(TokenType.TRUE));
+        return new BooleanLiteral(curToken(), curTokenIs(TokenType.TRUE));
     }
 
     private Expression parseStringLiteral() {
-        return new StringLiteral(curToken, curToken.value());
+        return new StringLiteral(curToken(), curValue());
     }
 
     private Expression parseArrayLiteral() {
-        ArrayLiteral expr = new ArrayLiteral(curToken);
+        ArrayLiteral expr = new ArrayLiteral(curToken());
         expr.setElements(parseExpressionList(TokenType.RBRACKET));
         return expr;
     }
@@ -357,8 +415,8 @@ public class Parser {
         Expression expr = parseExpression(Precedence.LOWEST);
 
         if (!expectPeek(TokenType.RPAREN)) {
-            addError("expected \")\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \")\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -366,11 +424,11 @@ public class Parser {
     }
 
     private Expression parseWhileExpression() {
-        WhileExpression expr = new WhileExpression(curToken);
+        WhileExpression expr = new WhileExpression(curToken());
 
         if (!expectPeek(TokenType.LPAREN)) {
-            addError("expected \"(\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \"(\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -379,8 +437,8 @@ public class Parser {
         expr.setCondition(parseExpression(Precedence.LOWEST));
 
         if (!expectPeek(TokenType.RPAREN)) {
-            addError("expected \")\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \")\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -388,7 +446,7 @@ public class Parser {
             expr.setBody(parseBlockStatement());
         } else {
             nextToken();
-            BlockStatement block = new BlockStatement(curToken);
+            BlockStatement block = new BlockStatement(curToken());
             block.addStatement(parseStatement());
             expr.setBody(block);
         }
@@ -397,11 +455,11 @@ public class Parser {
     }
 
     private Expression parseForExpression() {
-        ForExpression expr = new ForExpression(curToken);
+        ForExpression expr = new ForExpression(curToken());
 
         if (!expectPeek(TokenType.LPAREN)) {
-            addError("expected \"(\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \"(\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
         nextToken();
@@ -409,8 +467,8 @@ public class Parser {
         expr.setInit(parseStatement());
 
         if (!curTokenIs(TokenType.SEMICOLON)) {
-            addError("expected \";\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \";\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
         nextToken();
@@ -418,8 +476,8 @@ public class Parser {
         expr.setCondition(parseExpression(Precedence.LOWEST));
 
         if (!expectPeek(TokenType.SEMICOLON)) {
-            addError("expected \";\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \";\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
         nextToken();
@@ -427,8 +485,8 @@ public class Parser {
         expr.setIncrement(parseStatement());
 
         if (!expectPeek(TokenType.RPAREN)) {
-            addError("expected \")\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \")\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -436,7 +494,7 @@ public class Parser {
             expr.setBody(parseBlockStatement());
         } else {
             nextToken();
-            BlockStatement block = new BlockStatement(curToken);
+            BlockStatement block = new BlockStatement(curToken());
             block.addStatement(parseStatement());
             expr.setBody(block);
         }
@@ -445,11 +503,11 @@ public class Parser {
     }
 
     private Expression parseIfExpression() {
-        IfExpression expr = new IfExpression(curToken);
+        IfExpression expr = new IfExpression(curToken());
 
         if (!expectPeek(TokenType.LPAREN)) {
-            addError("expected \"(\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \"(\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -458,8 +516,8 @@ public class Parser {
         expr.setCondition(parseExpression(Precedence.LOWEST));
 
         if (!expectPeek(TokenType.RPAREN)) {
-            addError("expected \")\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \")\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -486,7 +544,7 @@ public class Parser {
     }
 
     private BlockStatement parseBlockStatement() {
-        BlockStatement block = new BlockStatement(curToken);
+        BlockStatement block = new BlockStatement(curToken());
 
         nextToken();
 
@@ -502,19 +560,19 @@ public class Parser {
     }
 
     private Expression parseFunctionLiteral() {
-        FunctionLiteral function = new FunctionLiteral(curToken);
+        FunctionLiteral function = new FunctionLiteral(curToken());
 
         if (!expectPeek(TokenType.LPAREN)) {
-            addError("expected \"(\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \"(\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
         function.setParameters(parseFunctionParameters());
 
         if (!expectPeek(TokenType.LBRACE)) {
-            addError("expected \"{\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \"{\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -533,19 +591,19 @@ public class Parser {
 
         nextToken();
 
-        Identifier ident = new Identifier(curToken, curToken.value());
+        Identifier ident = new Identifier(curToken(), curValue());
         parameters.add(ident);
 
         while (peekTokenIs(TokenType.COMMA)) {
             nextToken();
             nextToken();
-            Identifier parameter = new Identifier(curToken, curToken.value());
+            Identifier parameter = new Identifier(curToken(), curValue());
             parameters.add(parameter);
         }
 
         if (!expectPeek(TokenType.RPAREN)) {
-            addError("expected \")\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \")\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -553,7 +611,7 @@ public class Parser {
     }
 
     private Expression parseCallExpression(Expression function) {
-        CallExpression expr = new CallExpression(curToken, function);
+        CallExpression expr = new CallExpression(curToken(), function);
 
         expr.setArguments(parseExpressionList(TokenType.RPAREN));
 
@@ -580,8 +638,8 @@ public class Parser {
         }
 
         if (!expectPeek(end)) {
-            addError("expected " + end + " but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected " + end + " but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -589,21 +647,21 @@ public class Parser {
     }
 
     private Expression parseIndexExpression(Expression left) {
-        IndexExpression expr = new IndexExpression(curToken, left);
+        IndexExpression expr = new IndexExpression(curToken(), left);
         nextToken();
         expr.setIndex(parseExpression(Precedence.LOWEST));
 
         if (!expectPeek(TokenType.RBRACKET)) {
-            addError("expected \"]\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \"]\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
         return expr;
     }
 
     private Expression parseHashLiteral() {
-        HashLiteral hash = new HashLiteral(curToken);
-        HashMap<Expression, Expression> pairs = new HashMap<>();
+        HashLiteral hash = new HashLiteral(curToken());
+        HashMap<Expression, Expression> pairs = new LinkedHashMap<>();
 
         while (!peekTokenIs(TokenType.RBRACE) && !peekTokenIs(TokenType.EOF)) {
             nextToken();
@@ -611,8 +669,8 @@ public class Parser {
             Expression key = parseExpression(Precedence.LOWEST);
 
             if (!expectPeek(TokenType.COLON)) {
-                addError("expected \":\" but got " + peekToken.value()
-                        + " in line " + peekToken.line() + " column " + peekToken.column());
+                addError("expected \":\" but got " + peekValue()
+                        + " in line " + peekLine() + " column " + peekColumn());
                 return null;
             }
 
@@ -623,15 +681,15 @@ public class Parser {
             pairs.put(key, value);
 
             if (!peekTokenIs(TokenType.RBRACE) & !expectPeek(TokenType.COMMA)) {
-                addError("expected \",\" or \"}\" but got " + peekToken.value()
-                        + " in line " + peekToken.line() + " column " + peekToken.column());
+                addError("expected \",\" or \"}\" but got " + peekValue()
+                        + " in line " + peekLine() + " column " + peekColumn());
                 return null;
             }
         }
 
         if (!expectPeek(TokenType.RBRACE)) {
-            addError("expected \"}\" but got " + peekToken.value()
-                    + " in line " + peekToken.line() + " column " + peekToken.column());
+            addError("expected \"}\" but got " + peekValue()
+                    + " in line " + peekLine() + " column " + peekColumn());
             return null;
         }
 
@@ -640,7 +698,7 @@ public class Parser {
     }
 
     private Expression parseAssignExpression(Expression left) {
-        AssignExpression expr = new AssignExpression(curToken, left);
+        AssignExpression expr = new AssignExpression(curToken(), left);
         nextToken();
         expr.setRight(parseExpression(Precedence.LOWEST));
         return expr;
@@ -0,0 +1,110 @@
+package core.token;
+
+import java.util.Arrays;
+
+/**
+ * 紧凑的 token 序列
+ * <p> 用平行的 int 数组保存每个 token 的类型、值的起点和长度、行号和列号，
+ * 所有 token 的值依次存放在同一个 char[] 中。遍历和前瞻不需要创建对象，
+ * 需要 Token 对象时再通过 {@link #token(int)} 生成。</p>
+ * <p> 用法和示例 </p>
+ * <pre>
+ *   TokenBuffer tokens = new Lexer("1 + 1").tokenize();
+ *   Parser parser = new Parser(tokens);
+ * </pre>
+ */
+public class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private int[] types = new int[64];
+    private int[] starts = new int[64];
+    private int[] lengths = new int[64];
+    private int[] lines = new int[64];
+    private int[] columns = new int[64];
+    private int size;
+
+    private char[] text = new char[256];
+    private int textLen;
+
+    /**
+     * 把 token 的值追加到值存储区
+     * @return 值的起点
+     */
+    public int appendText(char[] src, int off, int len) {
+        ensureText(len);
+        System.arraycopy(src, off, text, textLen, len);
+        int start = textLen;
+        textLen += len;
+        return start;
+    }
+
+    /**
+     * 把 token 的值追加到值存储区
+     * @return 值的起点
+     */
+    public int appendText(String value) {
+        ensureText(value.length());
+        value.getChars(0, value.length(), text, textLen);
+        int start = textLen;
+        textLen += value.length();
+        return start;
+    }
+
+    private void ensureText(int len) {
+        if (textLen + len > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLen + len));
+        }
+    }
+
+    /**
+     * 追加一个 token，其值需要先通过 appendText 写入
+     */
+    public void add(TokenType type, int start, int len, int line, int column) {
+        if (size == types.length) {
+            int cap = size * 2;
+            types = Arrays.copyOf(types, cap);
+            starts = Arrays.copyOf(starts, cap);
+            lengths = Arrays.copyOf(lengths, cap);
+            lines = Arrays.copyOf(lines, cap);
+            columns = Arrays.copyOf(columns, cap);
+        }
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = len;
+        lines[size] = line;
+        columns[size] = column;
+        size++;
+    }
+
+    /**
+     * 获取 token 数量（包括结尾的 EOF）
+     * @return token 数量
+     */
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int i) {
+        return TYPES[types[i]];
+    }
+
+    public String value(int i) {
+        return new String(text, starts[i], lengths[i]);
+    }
+
+    public int line(int i) {
+        return lines[i];
+    }
+
+    public int column(int i) {
+        return columns[i];
+    }
+
+    /**
+     * 生成第 i 个 token 对应的 Token 对象
+     * @return Token 对象
+     */
+    public Token token(int i) {
+        return new Token(type(i), value(i), lines[i], columns[i]);
+    }
+}
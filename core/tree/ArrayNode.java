@@ -0,0 +1,34 @@
+package core.tree;
+
+import java.util.ArrayList;
+
+import core.env.Array;
+import core.env.Environment;
+import core.env.Obj;
+import core.env.ObjType;
+
+public final class ArrayNode extends Node {
+    private final Node[] elements;
+    private final PendingReturn returns;
+
+    ArrayNode(Node[] elements, PendingReturn returns) {
+        this.elements = elements;
+        this.returns = returns;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        ArrayList<Obj> values = new ArrayList<>(elements.length);
+        for (Node element : elements) {
+            Obj val = element.execute(env);
+            values.add(returns.valueOf(val));
+            if (val.type() == ObjType.ERROR) {
+                break;
+            }
+        }
+        if (values.size() == 1 && values.get(0).type() == ObjType.ERROR) {
+            return values.get(0);
+        }
+        return new Array(values);
+    }
+}
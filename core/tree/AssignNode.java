@@ -0,0 +1,42 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Error;
+import core.env.Obj;
+import core.env.ObjType;
+
+/**
+ * 给已定义的变量赋值
+ */
+public final class AssignNode extends Node {
+    private final String name;
+    private final int depth;
+    private final int slot;
+    private final Node value;
+    private final PendingReturn returns;
+
+    AssignNode(String name, int depth, int slot, Node value, PendingReturn returns) {
+        this.name = name;
+        this.depth = depth;
+        this.slot = slot;
+        this.value = value;
+        this.returns = returns;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj val = value.execute(env);
+        if (val.type() == ObjType.ERROR) {
+            return val;
+        }
+        Obj stored = returns.valueOf(val);
+        if (depth >= 0 && env.set(depth, slot, stored)) {
+            return val;
+        }
+        if (!env.has(name)) {
+            return new Error("identifier not defined: " + name);
+        }
+        env.set(name, stored);
+        return val;
+    }
+}
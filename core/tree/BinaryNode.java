@@ -0,0 +1,15 @@
+package core.tree;
+
+/**
+ * 有两个操作数的运算，只保存左右子节点。
+ * 每个运算符一个 final 子类，各自实现 execute，执行时不再按运算符分派，每种运算的调用点也各自独立
+ */
+public abstract class BinaryNode extends Node {
+    protected final Node left;
+    protected final Node right;
+
+    protected BinaryNode(Node left, Node right) {
+        this.left = left;
+        this.right = right;
+    }
+}
@@ -0,0 +1,32 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.NULL;
+import core.env.Obj;
+import core.env.ObjType;
+
+/**
+ * 代码块，遇到 return 或错误时结束，结果为最后一条语句的值
+ */
+public final class BlockNode extends Node {
+    private final Node[] statements;
+
+    public BlockNode(Node[] statements) {
+        this.statements = statements;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj res = NULL.INSTANCE;
+        for (Node statement : statements) {
+            res = statement.execute(env);
+            if (res == null) {
+                return NULL.INSTANCE;
+            }
+            if (res.type() == ObjType.RETURNVALUE || res.type() == ObjType.ERROR) {
+                return res;
+            }
+        }
+        return res;
+    }
+}
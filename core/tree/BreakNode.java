@@ -0,0 +1,12 @@
+package core.tree;
+
+import core.env.Break;
+import core.env.Environment;
+import core.env.Obj;
+
+public final class BreakNode extends Node {
+    @Override
+    public Obj execute(Environment env) {
+        return Break.INSTANCE;
+    }
+}
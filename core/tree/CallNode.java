@@ -0,0 +1,68 @@
+package core.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import core.env.Environment;
+import core.env.Error;
+import core.env.Obj;
+import core.env.ObjType;
+import core.env.Return;
+import core.env.builtin.BuiltinFunc;
+
+/**
+ * 函数调用，参数直接写入被调函数环境的对应下标
+ */
+public final class CallNode extends Node {
+    private final Node function;
+    private final Node[] args;
+    private final PendingReturn returns;
+
+    CallNode(Node function, Node[] args, PendingReturn returns) {
+        this.function = function;
+        this.args = args;
+        this.returns = returns;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj fn = function.execute(env);
+        if (fn.type() == ObjType.ERROR) {
+            return fn;
+        }
+        // 与 Evaluator 一致：遇到出错的参数就停止求值，只有第一个参数出错时才直接返回错误
+        Obj[] values = new Obj[args.length];
+        int n = 0;
+        for (Node arg : args) {
+            Obj val = arg.execute(env);
+            values[n++] = returns.valueOf(val);
+            if (val.type() == ObjType.ERROR) {
+                break;
+            }
+        }
+        if (n == 1 && values[0].type() == ObjType.ERROR) {
+            return values[0];
+        }
+
+        if (fn instanceof NodeFunction) {
+            NodeFunction nf = (NodeFunction) fn;
+            FunctionNode f = nf.getFunction();
+            if (f.params.length != n) {
+                return new Error("wrong number of arguments : want= " + f.params.length + " got=" + n);
+            }
+            Environment callEnv = new Environment(nf.getEnv(), f.scope);
+            for (int i = 0; i < n; i++) {
+                callEnv.define(f.params[i], values[i]);
+            }
+            Obj res = f.body.execute(callEnv);
+            if (res == Return.INSTANCE) {
+                return returns.take();
+            }
+            return res;
+        }
+        if (fn.type() == ObjType.BUILTIN) {
+            return ((BuiltinFunc) fn).exec(new ArrayList<>(Arrays.asList(values).subList(0, n)));
+        }
+        return new Error("not a function: " + fn.type());
+    }
+}
@@ -0,0 +1,20 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Obj;
+
+/**
+ * 常量：整数、布尔值、字符串字面量，值在生成节点时创建一次
+ */
+public final class ConstantNode extends Node {
+    private final Obj value;
+
+    public ConstantNode(Obj value) {
+        this.value = value;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        return value;
+    }
+}
@@ -0,0 +1,12 @@
+package core.tree;
+
+import core.env.Continue;
+import core.env.Environment;
+import core.env.Obj;
+
+public final class ContinueNode extends Node {
+    @Override
+    public Obj execute(Environment env) {
+        return Continue.INSTANCE;
+    }
+}
@@ -0,0 +1,77 @@
+package core.tree;
+
+import java.util.HashMap;
+
+import core.env.Bool;
+import core.env.Environment;
+import core.env.NULL;
+import core.env.Obj;
+import core.env.ObjType;
+import core.env.Return;
+
+/**
+ * for 循环，每次执行时按解析得到的作用域创建循环自己的环境
+ */
+public final class ForNode extends Node {
+    private final Node init;
+    private final Node condition;
+    private final Node increment;
+    private final Node[] body;
+    private final HashMap<String, Integer> scope;
+    private final PendingReturn returns;
+
+    /**
+     * @param init 初始化语句，没有时为 null
+     * @param increment 增量语句，没有时为 null
+     */
+    ForNode(Node init, Node condition, Node increment, Node[] body, HashMap<String, Integer> scope,
+            PendingReturn returns) {
+        this.init = init;
+        this.condition = condition;
+        this.increment = increment;
+        this.body = body;
+        this.scope = scope;
+        this.returns = returns;
+    }
+
+    @Override
+    public Obj execute(Environment outer) {
+        Environment env = new Environment(outer, scope);
+        Obj res = NULL.INSTANCE;
+        Obj returned = null;
+        if (init != null) {
+            res = init.execute(env);
+            if (res.type() == ObjType.ERROR) {
+                return res;
+            }
+        }
+        Obj cond = condition.execute(env);
+        if (cond.type() == ObjType.ERROR) {
+            return cond;
+        }
+        loop:
+        while (cond.type() == ObjType.BOOLEAN && ((Bool) cond).getValue()
+                || cond.type() == ObjType.NULL) {
+            for (Node statement : body) {
+                res = statement.execute(env);
+                if (res.type() == ObjType.BREAK) {
+                    break loop;
+                }
+                if (res.type() == ObjType.CONTINUE) {
+                    break;
+                }
+                if (res == Return.INSTANCE) {
+                    returned = returns.peek();
+                }
+            }
+            if (increment != null) {
+                increment.execute(env);
+            }
+            cond = condition.execute(env);
+            if (cond.type() == ObjType.ERROR) {
+                return cond;
+            }
+        }
+        return returns.restore(res, returned);
+    }
+}
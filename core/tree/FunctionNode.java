@@ -0,0 +1,31 @@
+package core.tree;
+
+import java.util.HashMap;
+
+import core.env.Environment;
+import core.env.Obj;
+
+/**
+ * 函数字面量，执行时捕获当前环境生成 {@link NodeFunction}
+ */
+public final class FunctionNode extends Node {
+    final Node body;
+    final int[] params;
+    final HashMap<String, Integer> scope;
+
+    /**
+     * @param body 函数体
+     * @param params 每个参数在函数环境中的下标
+     * @param scope 解析得到的函数作用域
+     */
+    public FunctionNode(Node body, int[] params, HashMap<String, Integer> scope) {
+        this.body = body;
+        this.params = params;
+        this.scope = scope;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        return new NodeFunction(env, this);
+    }
+}
@@ -0,0 +1,32 @@
+package core.tree;
+
+import core.env.Bool;
+import core.env.Environment;
+import core.env.Int;
+import core.env.Obj;
+import core.env.ObjType;
+import core.eval.Operators;
+
+public final class GreaterThanNode extends BinaryNode {
+    public GreaterThanNode(Node left, Node right) {
+        super(left, right);
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj l = left.execute(env);
+        if (l.type() == ObjType.ERROR) {
+            return l;
+        }
+        Obj r = right.execute(env);
+        if (r.type() == ObjType.ERROR) {
+            return r;
+        }
+        if (l instanceof Int && r instanceof Int) {
+            int a = ((Int) l).getValue();
+            int b = ((Int) r).getValue();
+            return Bool.valueOf(a > b);
+        }
+        return Operators.infix(">", l, r);
+    }
+}
@@ -0,0 +1,42 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Error;
+import core.env.Hash;
+import core.env.Obj;
+import core.env.ObjType;
+
+/**
+ * 哈希表字面量，按源代码中的顺序求值和插入
+ */
+public final class HashNode extends Node {
+    private final Node[] keys;
+    private final Node[] values;
+    private final PendingReturn returns;
+
+    HashNode(Node[] keys, Node[] values, PendingReturn returns) {
+        this.keys = keys;
+        this.values = values;
+        this.returns = returns;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Hash hash = new Hash(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            Obj k = keys[i].execute(env);
+            if (k.type() == ObjType.ERROR) {
+                return k;
+            }
+            if (!Hash.isHashable(k)) {
+                return new Error("unusable as hash key: " + k.type());
+            }
+            Obj v = values[i].execute(env);
+            if (v.type() == ObjType.ERROR) {
+                return v;
+            }
+            hash.put(k, returns.valueOf(v));
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,41 @@
+package core.tree;
+
+import core.env.Bool;
+import core.env.Environment;
+import core.env.Error;
+import core.env.NULL;
+import core.env.Obj;
+import core.env.ObjType;
+
+public final class IfNode extends Node {
+    private final Node condition;
+    private final Node consequence;
+    private final Node alternative;
+
+    /**
+     * @param alternative else 分支，没有时为 null
+     */
+    public IfNode(Node condition, Node consequence, Node alternative) {
+        this.condition = condition;
+        this.consequence = consequence;
+        this.alternative = alternative;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj cond = condition.execute(env);
+        if (cond.type() == ObjType.ERROR) {
+            return cond;
+        }
+        if (cond.type() == ObjType.BOOLEAN) {
+            if (((Bool) cond).getValue()) {
+                return consequence.execute(env);
+            }
+            if (alternative != null) {
+                return alternative.execute(env);
+            }
+            return NULL.INSTANCE;
+        }
+        return new Error("unknown error in IfExpression: " + cond.type());
+    }
+}
@@ -0,0 +1,55 @@
+package core.tree;
+
+import core.env.Array;
+import core.env.Environment;
+import core.env.Error;
+import core.env.Hash;
+import core.env.Int;
+import core.env.Obj;
+import core.env.ObjType;
+
+/**
+ * 给数组元素或哈希表的键赋值
+ */
+public final class IndexAssignNode extends Node {
+    private final Node left;
+    private final Node index;
+    private final Node value;
+    private final PendingReturn returns;
+
+    IndexAssignNode(Node left, Node index, Node value, PendingReturn returns) {
+        this.left = left;
+        this.index = index;
+        this.value = value;
+        this.returns = returns;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj val = value.execute(env);
+        if (val.type() == ObjType.ERROR) {
+            return val;
+        }
+        Obj stored = returns.valueOf(val);
+        Obj l = left.execute(env);
+        if (l.type() == ObjType.ERROR) {
+            return l;
+        }
+        Obj i = index.execute(env);
+        if (i.type() == ObjType.ERROR) {
+            return i;
+        }
+        if (l.type() == ObjType.ARRAY) {
+            Array array = (Array) l;
+            int n = ((Int) i).getValue();
+            if (n < 0 || n >= array.length()) {
+                return new Error("index out of bounds");
+            }
+            array.set(n, stored);
+        }
+        if (l.type() == ObjType.HASH && Hash.isHashable(i)) {
+            ((Hash) l).put(i, stored);
+        }
+        return returns.restore(val, stored);
+    }
+}
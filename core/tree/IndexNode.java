@@ -0,0 +1,29 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Obj;
+import core.env.ObjType;
+import core.eval.Operators;
+
+public final class IndexNode extends Node {
+    private final Node left;
+    private final Node index;
+
+    public IndexNode(Node left, Node index) {
+        this.left = left;
+        this.index = index;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj l = left.execute(env);
+        if (l.type() == ObjType.ERROR) {
+            return l;
+        }
+        Obj i = index.execute(env);
+        if (i.type() == ObjType.ERROR) {
+            return i;
+        }
+        return Operators.index(l, i);
+    }
+}
@@ -0,0 +1,31 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Obj;
+import core.env.ObjType;
+import core.eval.Operators;
+
+/**
+ * 没有专门节点类的中缀运算，求出左右两边的值后交给 {@link Operators#infix}
+ */
+public final class InfixNode extends BinaryNode {
+    private final String op;
+
+    public InfixNode(String op, Node left, Node right) {
+        super(left, right);
+        this.op = op;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj l = left.execute(env);
+        if (l.type() == ObjType.ERROR) {
+            return l;
+        }
+        Obj r = right.execute(env);
+        if (r.type() == ObjType.ERROR) {
+            return r;
+        }
+        return Operators.infix(op, l, r);
+    }
+}
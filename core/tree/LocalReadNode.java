@@ -0,0 +1,30 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Obj;
+import core.env.builtin.Builtins;
+
+/**
+ * 读取当前环境中的变量
+ */
+public final class LocalReadNode extends Node {
+    private final String name;
+    private final int slot;
+    private final Builtins builtins;
+
+    public LocalReadNode(String name, int slot, Builtins builtins) {
+        this.name = name;
+        this.slot = slot;
+        this.builtins = builtins;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj val = env.get(0, slot);
+        if (val != null) {
+            return val;
+        }
+        // 还没有执行到定义语句，按名字到外层查找
+        return NameReadNode.lookup(env, name, builtins);
+    }
+}
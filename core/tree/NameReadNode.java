@@ -0,0 +1,41 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Error;
+import core.env.Obj;
+import core.env.builtin.BuiltinFunc;
+import core.env.builtin.Builtins;
+
+/**
+ * 按名字读取变量，用于解析时找不到定义的标识符（如内置函数）
+ */
+public final class NameReadNode extends Node {
+    private final String name;
+    private final Builtins builtins;
+
+    public NameReadNode(String name, Builtins builtins) {
+        this.name = name;
+        this.builtins = builtins;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        return lookup(env, name, builtins);
+    }
+
+    /**
+     * 依次在环境和内置函数中按名字查找
+     * @return 变量的值，找不到时返回 Error
+     */
+    static Obj lookup(Environment env, String name, Builtins builtins) {
+        Obj val = env.get(name);
+        if (val != null) {
+            return val;
+        }
+        BuiltinFunc func = builtins.get(name);
+        if (func != null) {
+            return func;
+        }
+        return new Error("identifier not defined: " + name);
+    }
+}
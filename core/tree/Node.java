@@ -0,0 +1,18 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Obj;
+
+/**
+ * 可执行节点
+ * <p> 由 {@link TreeCompiler} 从语法树生成，每种节点只负责一种操作，子节点和变量地址在生成时已经确定，
+ * 执行时不再按节点类型分派，也不再比较运算符字符串。</p>
+ */
+public abstract class Node {
+    /**
+     * 在环境 env 中执行节点
+     * @param env 当前环境
+     * @return 执行结果，出错时返回 Error
+     */
+    public abstract Obj execute(Environment env);
+}
@@ -0,0 +1,36 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Obj;
+import core.env.ObjType;
+
+/**
+ * 节点树执行方式下的函数对象：函数体节点和定义时的环境
+ */
+public class NodeFunction extends Obj {
+    private final Environment env;
+    private final FunctionNode function;
+
+    public NodeFunction(Environment env, FunctionNode function) {
+        this.env = env;
+        this.function = function;
+    }
+
+    public Environment getEnv() {
+        return env;
+    }
+
+    public FunctionNode getFunction() {
+        return function;
+    }
+
+    @Override
+    public ObjType type() {
+        return ObjType.FUNCTION;
+    }
+
+    @Override
+    public String inspect() {
+        return "<function>";
+    }
+}
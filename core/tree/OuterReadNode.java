@@ -0,0 +1,32 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Obj;
+import core.env.builtin.Builtins;
+
+/**
+ * 读取外层环境中的变量
+ */
+public final class OuterReadNode extends Node {
+    private final String name;
+    private final int depth;
+    private final int slot;
+    private final Builtins builtins;
+
+    public OuterReadNode(String name, int depth, int slot, Builtins builtins) {
+        this.name = name;
+        this.depth = depth;
+        this.slot = slot;
+        this.builtins = builtins;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj val = env.get(depth, slot);
+        if (val != null) {
+            return val;
+        }
+        // 还没有执行到定义语句，按名字查找
+        return NameReadNode.lookup(env, name, builtins);
+    }
+}
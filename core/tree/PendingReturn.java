@@ -0,0 +1,53 @@
+package core.tree;
+
+import core.env.Obj;
+import core.env.Return;
+
+/**
+ * 一次转换生成的节点共用的 return 返回值
+ * <p> return 执行后返回不带状态的 {@link Return#INSTANCE}，返回值保存在这里，由函数调用或程序取走。
+ * 存入变量、参数、数组或哈希表时用 {@link #valueOf} 把信号换成返回值，信号本身不会被存入。</p>
+ */
+final class PendingReturn {
+    private Obj value;
+
+    /**
+     * 记下返回值
+     * @return 返回信号
+     */
+    Obj signal(Obj val) {
+        value = valueOf(val);
+        return Return.INSTANCE;
+    }
+
+    /**
+     * 取走返回值
+     */
+    Obj take() {
+        Obj val = value;
+        value = null;
+        return val;
+    }
+
+    /**
+     * @return 当前的返回值，不取走
+     */
+    Obj peek() {
+        return value;
+    }
+
+    Obj valueOf(Obj val) {
+        return val == Return.INSTANCE ? value : val;
+    }
+
+    /**
+     * 结果是返回信号时恢复它的返回值：循环体中的 return 不会结束循环，赋值在值之后还要求下标，
+     * 期间的函数调用可能已经取走或改写了它
+     */
+    Obj restore(Obj res, Obj returned) {
+        if (res == Return.INSTANCE) {
+            value = returned;
+        }
+        return res;
+    }
+}
@@ -0,0 +1,20 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Obj;
+import core.eval.Operators;
+
+public final class PrefixNode extends Node {
+    private final String op;
+    private final Node right;
+
+    public PrefixNode(String op, Node right) {
+        this.op = op;
+        this.right = right;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        return Operators.prefix(op, right.execute(env));
+    }
+}
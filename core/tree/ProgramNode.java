@@ -0,0 +1,35 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.NULL;
+import core.env.Obj;
+import core.env.ObjType;
+import core.env.Return;
+
+/**
+ * 整个程序，遇到 return 或错误时结束
+ */
+public final class ProgramNode extends Node {
+    private final Node[] statements;
+    private final PendingReturn returns;
+
+    ProgramNode(Node[] statements, PendingReturn returns) {
+        this.statements = statements;
+        this.returns = returns;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj res = NULL.INSTANCE;
+        for (Node statement : statements) {
+            res = statement.execute(env);
+            if (res == Return.INSTANCE) {
+                return returns.take();
+            }
+            if (res.type() == ObjType.ERROR) {
+                return res;
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,24 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Obj;
+import core.env.ObjType;
+
+public final class ReturnNode extends Node {
+    private final Node value;
+    private final PendingReturn returns;
+
+    ReturnNode(Node value, PendingReturn returns) {
+        this.value = value;
+        this.returns = returns;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj val = value.execute(env);
+        if (val.type() == ObjType.ERROR) {
+            return val;
+        }
+        return returns.signal(val);
+    }
+}
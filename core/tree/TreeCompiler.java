@@ -0,0 +1,237 @@
+package core.tree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import core.ast.Program;
+import core.ast.base.ASTNode;
+import core.ast.expression.ArrayLiteral;
+import core.ast.expression.AssignExpression;
+import core.ast.expression.BooleanLiteral;
+import core.ast.expression.CallExpression;
+import core.ast.expression.Expression;
+import core.ast.expression.ForExpression;
+import core.ast.expression.FunctionLiteral;
+import core.ast.expression.HashLiteral;
+import core.ast.expression.Identifier;
+import core.ast.expression.IfExpression;
+import core.ast.expression.IndexExpression;
+import core.ast.expression.InfixExpression;
+import core.ast.expression.IntegerLiteral;
+import core.ast.expression.PrefixExpression;
+import core.ast.expression.StringLiteral;
+import core.ast.expression.WhileExpression;
+import core.ast.statement.BlockStatement;
+import core.ast.statement.ExpressionStatement;
+import core.ast.statement.ReturnStatement;
+import core.ast.statement.Statement;
+import core.ast.statement.VarStatement;
+import core.env.Bool;
+import core.env.Environment;
+import core.env.Error;
+import core.env.Int;
+import core.env.Str;
+import core.env.builtin.Builtins;
+import core.eval.Resolver;
+
+/**
+ * 把语法树一次性转换为可执行的节点树
+ * <p> 第三种执行方式：不生成字节码，也不在执行时按节点类型分派。转换前先用 {@link Resolver}
+ * 解析变量地址，每个变量访问、运算符、循环都对应一个专门的节点类，子节点在转换时直接链接好，
+ * 执行结果与 {@link core.eval.Evaluator} 一致。</p>
+ * <p> 用法和示例 </p>
+ * <pre>
+ *   Environment env = new Environment();
+ *   Node node = new TreeCompiler().compile(program, env);
+ *   Obj result = node.execute(env);
+ * </pre>
+ */
+public class TreeCompiler {
+    private Resolver resolver = new Resolver();
+    private Builtins builtins = new Builtins();
+    private PendingReturn returns;
+
+    /**
+     * 转换整个程序，程序中定义的全局变量添加到 env 的作用域中
+     * @param program 程序
+     * @param env 执行程序的环境，生成的节点只能在这个环境中执行
+     * @return 程序对应的节点
+     */
+    public Node compile(Program program, Environment env) {
+        resolver.resolve(program, env);
+        returns = new PendingReturn();
+        return new ProgramNode(compileStatements(program.getStatements()), returns);
+    }
+
+    private Node[] compileStatements(ArrayList<Statement> statements) {
+        Node[] nodes = new Node[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compile(statements.get(i));
+        }
+        return nodes;
+    }
+
+    private Node[] compileExpressions(ArrayList<Expression> expressions) {
+        if (expressions == null) {
+            return new Node[0];
+        }
+        Node[] nodes = new Node[expressions.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compile(expressions.get(i));
+        }
+        return nodes;
+    }
+
+    private Node compile(ASTNode node) {
+        switch (node.type()) {
+            case ExpressionStatement:
+                return compile(((ExpressionStatement) node).getExpression());
+            case BlockStatement:
+                return new BlockNode(compileStatements(((BlockStatement) node).getStatements()));
+            case ReturnStatement:
+                return new ReturnNode(compile(((ReturnStatement) node).getRet()), returns);
+            case BreakStatement:
+                return new BreakNode();
+            case ContinueStatement:
+                return new ContinueNode();
+            case IntegerLiteral:
+                return new ConstantNode(Int.valueOf(((IntegerLiteral) node).getValue()));
+            case BooleanLiteral:
+                return new ConstantNode(Bool.valueOf(((BooleanLiteral) node).getValue()));
+            case StringLiteral:
+                return new ConstantNode(new Str(((StringLiteral) node).getValue()));
+            case Identifier:
+                return compileIdentifier((Identifier) node);
+            case VarStatement:
+            {
+                VarStatement vs = (VarStatement) node;
+                return new VarNode(vs.getIdentifier().getSlot(), compile(vs.getValue()), returns);
+            }
+            case AssignExpression:
+                return compileAssign((AssignExpression) node);
+            case PrefixExpression:
+            {
+                PrefixExpression pe = (PrefixExpression) node;
+                return new PrefixNode(pe.getOp(), compile(pe.getRight()));
+            }
+            case InfixExpression:
+                return compileInfix((InfixExpression) node);
+            case IfExpression:
+            {
+                IfExpression ie = (IfExpression) node;
+                Statement alternative = ie.getAlternative();
+                return new IfNode(compile(ie.getCondition()), compile(ie.getConsequence()),
+                        alternative == null ? null : compile(alternative));
+            }
+            case WhileExpression:
+            {
+                WhileExpression we = (WhileExpression) node;
+                return new WhileNode(compile(we.getCondition()), compileStatements(we.getBody().getStatements()), returns);
+            }
+            case ForExpression:
+            {
+                ForExpression fe = (ForExpression) node;
+                return new ForNode(
+                        fe.getInit() == null ? null : compile(fe.getInit()),
+                        compile(fe.getCondition()),
+                        fe.getIncrement() == null ? null : compile(fe.getIncrement()),
+                        compileStatements(fe.getBody().getStatements()),
+                        fe.getScope(),
+                        returns);
+            }
+            case FunctionLiteral:
+            {
+                FunctionLiteral fl = (FunctionLiteral) node;
+                int[] params = new int[fl.getParameters().size()];
+                for (int i = 0; i < params.length; i++) {
+                    params[i] = fl.getParameters().get(i).getSlot();
+                }
+                return new FunctionNode(compile(fl.getBody()), params, fl.getScope());
+            }
+            case CallExpression:
+            {
+                CallExpression ce = (CallExpression) node;
+                return new CallNode(compile(ce.getFunction()), compileExpressions(ce.getArguments()), returns);
+            }
+            case ArrayLiteral:
+                return new ArrayNode(compileExpressions(((ArrayLiteral) node).getElements()), returns);
+            case IndexExpression:
+            {
+                IndexExpression ie = (IndexExpression) node;
+                return new IndexNode(compile(ie.getLeft()), compile(ie.getIndex()));
+            }
+            case HashLiteral:
+            {
+                HashMap<Expression, Expression> pairs = ((HashLiteral) node).getPairs();
+                Node[] keys = new Node[pairs.size()];
+                Node[] values = new Node[pairs.size()];
+                int i = 0;
+                for (Map.Entry<Expression, Expression> e : pairs.entrySet()) {
+                    keys[i] = compile(e.getKey());
+                    values[i] = compile(e.getValue());
+                    i++;
+                }
+                return new HashNode(keys, values, returns);
+            }
+            default:
+                return new ConstantNode(new Error("unknown node type: " + node.type()));
+        }
+    }
+
+    private Node compileIdentifier(Identifier id) {
+        if (id.getDepth() < 0) {
+            return new NameReadNode(id.getValue(), builtins);
+        }
+        if (id.getDepth() == 0) {
+            return new LocalReadNode(id.getValue(), id.getSlot(), builtins);
+        }
+        return new OuterReadNode(id.getValue(), id.getDepth(), id.getSlot(), builtins);
+    }
+
+    private Node compileAssign(AssignExpression ae) {
+        Node value = compile(ae.getRight());
+        Expression left = ae.getLeft();
+        if (left instanceof Identifier) {
+            Identifier id = (Identifier) left;
+            return new AssignNode(id.getValue(), id.getDepth(), id.getSlot(), value, returns);
+        }
+        if (left instanceof IndexExpression) {
+            IndexExpression ie = (IndexExpression) left;
+            return new IndexAssignNode(compile(ie.getLeft()), compile(ie.getIndex()), value, returns);
+        }
+        return value;
+    }
+
+    /**
+     * 常用运算符在生成节点时选定专门的节点类，其余运算符使用 {@link InfixNode}
+     */
+    private Node compileInfix(InfixExpression ie) {
+        Node left = compile(ie.getLeft());
+        Node right = compile(ie.getRight());
+        switch (ie.getOp()) {
+            case "+":
+                return new AddNode(left, right);
+            case "-":
+                return new SubNode(left, right);
+            case "*":
+                return new MulNode(left, right);
+            case "/":
+                return new DivNode(left, right);
+            case "<":
+                return new LessThanNode(left, right);
+            case ">":
+                return new GreaterThanNode(left, right);
+            case "<=":
+                return new LessEqualNode(left, right);
+            case ">=":
+                return new GreaterEqualNode(left, right);
+            case "==":
+                return new EqualNode(left, right);
+            case "!=":
+                return new NotEqualNode(left, right);
+            default:
+                return new InfixNode(ie.getOp(), left, right);
+        }
+    }
+}
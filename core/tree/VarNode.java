@@ -0,0 +1,30 @@
+package core.tree;
+
+import core.env.Environment;
+import core.env.Obj;
+import core.env.ObjType;
+
+/**
+ * 在当前环境中定义变量
+ */
+public final class VarNode extends Node {
+    private final int slot;
+    private final Node value;
+    private final PendingReturn returns;
+
+    VarNode(int slot, Node value, PendingReturn returns) {
+        this.slot = slot;
+        this.value = value;
+        this.returns = returns;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj val = value.execute(env);
+        if (val.type() == ObjType.ERROR) {
+            return val;
+        }
+        env.define(slot, returns.valueOf(val));
+        return val;
+    }
+}
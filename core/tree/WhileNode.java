@@ -0,0 +1,53 @@
+package core.tree;
+
+import core.env.Bool;
+import core.env.Environment;
+import core.env.NULL;
+import core.env.Obj;
+import core.env.ObjType;
+import core.env.Return;
+
+/**
+ * while 循环，循环体的语句直接逐条执行，break 和 continue 只在循环体的顶层生效
+ */
+public final class WhileNode extends Node {
+    private final Node condition;
+    private final Node[] body;
+    private final PendingReturn returns;
+
+    WhileNode(Node condition, Node[] body, PendingReturn returns) {
+        this.condition = condition;
+        this.body = body;
+        this.returns = returns;
+    }
+
+    @Override
+    public Obj execute(Environment env) {
+        Obj res = NULL.INSTANCE;
+        Obj returned = null;
+        Obj cond = condition.execute(env);
+        if (cond.type() == ObjType.ERROR) {
+            return cond;
+        }
+        loop:
+        while (cond.type() == ObjType.BOOLEAN && ((Bool) cond).getValue()) {
+            for (Node statement : body) {
+                res = statement.execute(env);
+                if (res.type() == ObjType.BREAK) {
+                    break loop;
+                }
+                if (res.type() == ObjType.CONTINUE) {
+                    break;
+                }
+                if (res == Return.INSTANCE) {
+                    returned = returns.peek();
+                }
+            }
+            cond = condition.execute(env);
+            if (cond.type() == ObjType.ERROR) {
+                return cond;
+            }
+        }
+        return returns.restore(res, returned);
+    }
+}
@@ -0,0 +1,372 @@
+package core.vm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * 生成 class 文件的最小工具，只包含即时编译用到的部分
+ * <p> 类只有方法没有字段，常量池项按内容去重。分支目标用 {@link Label} 表示，
+ * 方法结束时回填偏移量，偏移量超过 16 位时 {@link Code#finish()} 返回 false。</p>
+ * <p> 栈映射帧只支持一种形式：操作数栈为空、局部变量全部是引用类型，
+ * 调用 {@link Code#frame()} 在当前位置登记一个这样的帧。</p>
+ */
+class BytecodeWriter {
+    static final int ACONST_NULL = 0x01;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int DUP = 0x59;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6c;
+    static final int INEG = 0x74;
+    static final int IXOR = 0x82;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ICMPLT = 0xa1;
+    static final int IF_ICMPGE = 0xa2;
+    static final int IF_ICMPGT = 0xa3;
+    static final int IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ANEWARRAY = 0xbd;
+    static final int CHECKCAST = 0xc0;
+    static final int INSTANCEOF = 0xc1;
+    static final int IFNULL = 0xc6;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_VERSION = 61;
+
+    private final Buffer pool = new Buffer();
+    private final HashMap<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final ArrayList<byte[]> methods = new ArrayList<>();
+
+    BytecodeWriter(String name, String superName) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+    int thisClass() {
+        return thisClass;
+    }
+
+    int utf8(String s) {
+        Integer idx = poolIndex.get("U" + s);
+        if (idx != null) {
+            return idx;
+        }
+        pool.u1(1);
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        pool.u2(bytes.length);
+        pool.bytes(bytes, bytes.length);
+        return newEntry("U" + s);
+    }
+
+    int classRef(String name) {
+        Integer idx = poolIndex.get("C" + name);
+        if (idx != null) {
+            return idx;
+        }
+        int n = utf8(name);
+        pool.u1(7);
+        pool.u2(n);
+        return newEntry("C" + name);
+    }
+
+    int integer(int value) {
+        Integer idx = poolIndex.get("I" + value);
+        if (idx != null) {
+            return idx;
+        }
+        pool.u1(3);
+        pool.u4(value);
+        return newEntry("I" + value);
+    }
+
+    int fieldRef(String owner, String name, String desc) {
+        return memberRef(9, owner, name, desc);
+    }
+
+    int methodRef(String owner, String name, String desc) {
+        return memberRef(10, owner, name, desc);
+    }
+
+    private int memberRef(int tag, String owner, String name, String desc) {
+        String key = tag + owner + "." + name + ":" + desc;
+        Integer idx = poolIndex.get(key);
+        if (idx != null) {
+            return idx;
+        }
+        int c = classRef(owner);
+        int nt = nameAndType(name, desc);
+        pool.u1(tag);
+        pool.u2(c);
+        pool.u2(nt);
+        return newEntry(key);
+    }
+
+    private int nameAndType(String name, String desc) {
+        Integer idx = poolIndex.get("N" + name + ":" + desc);
+        if (idx != null) {
+            return idx;
+        }
+        int n = utf8(name);
+        int d = utf8(desc);
+        pool.u1(12);
+        pool.u2(n);
+        pool.u2(d);
+        return newEntry("N" + name + ":" + desc);
+    }
+
+    private int newEntry(String key) {
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    /**
+     * 添加一个方法
+     * @param frameLocals 栈映射帧中局部变量的类型（常量池中的类），没有登记帧时可以为 null
+     */
+    void method(int access, String name, String desc, Code code, int maxStack, int maxLocals, int[] frameLocals) {
+        Buffer m = new Buffer();
+        m.u2(access);
+        m.u2(utf8(name));
+        m.u2(utf8(desc));
+        m.u2(1);
+
+        Buffer attr = new Buffer();
+        attr.u2(maxStack);
+        attr.u2(maxLocals);
+        attr.u4(code.out.size);
+        attr.bytes(code.out.data, code.out.size);
+        attr.u2(0);
+        if (code.frames.isEmpty()) {
+            attr.u2(0);
+        } else {
+            attr.u2(1);
+            Buffer table = new Buffer();
+            table.u2(code.frames.size());
+            int prev = -1;
+            for (int offset : code.frames) {
+                table.u1(255);
+                table.u2(offset - prev - 1);
+                table.u2(frameLocals.length);
+                for (int c : frameLocals) {
+                    table.u1(7);
+                    table.u2(c);
+                }
+                table.u2(0);
+                prev = offset;
+            }
+            attr.u2(utf8("StackMapTable"));
+            attr.u4(table.size);
+            attr.bytes(table.data, table.size);
+        }
+
+        m.u2(utf8("Code"));
+        m.u4(attr.size);
+        m.bytes(attr.data, attr.size);
+        methods.add(Arrays.copyOf(m.data, m.size));
+    }
+
+    byte[] toByteArray() {
+        Buffer out = new Buffer();
+        out.u4(0xCAFEBABE);
+        out.u2(0);
+        out.u2(CLASS_VERSION);
+        out.u2(poolCount);
+        out.bytes(pool.data, pool.size);
+        out.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.u2(thisClass);
+        out.u2(superClass);
+        out.u2(0);
+        out.u2(0);
+        out.u2(methods.size());
+        for (byte[] m : methods) {
+            out.bytes(m, m.length);
+        }
+        out.u2(0);
+        return Arrays.copyOf(out.data, out.size);
+    }
+
+    /**
+     * 代码中的位置，先使用后绑定
+     */
+    static class Label {
+        int offset = -1;
+    }
+
+    /**
+     * 一个方法的代码
+     */
+    class Code {
+        private final Buffer out = new Buffer();
+        private final ArrayList<Integer> frames = new ArrayList<>();
+        private final ArrayList<Label> fixupLabels = new ArrayList<>();
+        private final ArrayList<Integer> fixupAt = new ArrayList<>();
+
+        int size() {
+            return out.size;
+        }
+
+        void op(int opcode) {
+            out.u1(opcode);
+        }
+
+        void op(int opcode, int u2) {
+            out.u1(opcode);
+            out.u2(u2);
+        }
+
+        void aload(int local) {
+            local(ALOAD, local);
+        }
+
+        void astore(int local) {
+            local(ASTORE, local);
+        }
+
+        private void local(int opcode, int local) {
+            out.u1(opcode);
+            out.u1(local);
+        }
+
+        void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                out.u1(0x03 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                out.u1(0x10);
+                out.u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                out.u1(0x11);
+                out.u2(value);
+            } else {
+                int idx = integer(value);
+                if (idx < 256) {
+                    out.u1(0x12);
+                    out.u1(idx);
+                } else {
+                    out.u1(0x13);
+                    out.u2(idx);
+                }
+            }
+        }
+
+        void getstatic(String owner, String name, String desc) {
+            op(GETSTATIC, fieldRef(owner, name, desc));
+        }
+
+        void getfield(String owner, String name, String desc) {
+            op(GETFIELD, fieldRef(owner, name, desc));
+        }
+
+        void putfield(String owner, String name, String desc) {
+            op(PUTFIELD, fieldRef(owner, name, desc));
+        }
+
+        void invoke(int opcode, String owner, String name, String desc) {
+            op(opcode, methodRef(owner, name, desc));
+        }
+
+        void type(int opcode, String className) {
+            op(opcode, classRef(className));
+        }
+
+        void jump(int opcode, Label target) {
+            fixupLabels.add(target);
+            fixupAt.add(out.size);
+            out.u1(opcode);
+            out.u2(0);
+        }
+
+        void bind(Label label) {
+            label.offset = out.size;
+        }
+
+        /**
+         * 在当前位置登记栈映射帧，同一位置只登记一次
+         */
+        void frame() {
+            if (frames.isEmpty() || frames.get(frames.size() - 1) != out.size) {
+                frames.add(out.size);
+            }
+        }
+
+        /**
+         * 回填所有跳转的偏移量
+         * @return 代码长度和偏移量都在限制以内时返回 true
+         */
+        boolean finish() {
+            if (out.size > Short.MAX_VALUE) {
+                return false;
+            }
+            for (int i = 0; i < fixupAt.size(); i++) {
+                int at = fixupAt.get(i);
+                int offset = fixupLabels.get(i).offset - at;
+                if (fixupLabels.get(i).offset < 0) {
+                    return false;
+                }
+                out.data[at + 1] = (byte) (offset >> 8);
+                out.data[at + 2] = (byte) offset;
+            }
+            return true;
+        }
+    }
+
+    private static class Buffer {
+        byte[] data = new byte[256];
+        int size;
+
+        void u1(int v) {
+            ensure(1);
+            data[size++] = (byte) v;
+        }
+
+        void u2(int v) {
+            ensure(2);
+            data[size++] = (byte) (v >> 8);
+            data[size++] = (byte) v;
+        }
+
+        void u4(int v) {
+            ensure(4);
+            data[size++] = (byte) (v >> 24);
+            data[size++] = (byte) (v >> 16);
+            data[size++] = (byte) (v >> 8);
+            data[size++] = (byte) v;
+        }
+
+        void bytes(byte[] b, int len) {
+            ensure(len);
+            System.arraycopy(b, 0, data, size, len);
+            size += len;
+        }
+
+        private void ensure(int n) {
+            if (size + n > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + n));
+            }
+        }
+    }
+}
@@ -1,17 +1,34 @@
 package core.vm;
 
 import core.env.Closure;
+import core.env.CompiledFunction;
 
 public class Frame {
     
     private Closure closure;
+    private byte[] instructions;
+    private byte[] inlineCache;
+    private TierState state;
+    private TypeProfile profile;
     private int base;
     private int ip;
 
     public Frame(int base, int ip, Closure closure) {
+        reset(base, ip, closure);
+    }
+
+    /**
+     * 复用已有的 Frame 对象，避免每次调用都分配新帧
+     */
+    public void reset(int base, int ip, Closure closure) {
         this.base = base;
         this.ip = ip;
         this.closure = closure;
+        CompiledFunction fn = closure.function();
+        this.instructions = fn.getInstructions();
+        this.inlineCache = fn.inlineCache();
+        this.state = TierState.of(fn);
+        this.profile = state.tier() == TierState.Tier.PROFILING ? state.profile() : null;
     }
 
     public int basePtr() {
@@ -26,6 +43,25 @@ public class Frame {
         return closure;
     }
 
+    public byte[] instructions() {
+        return instructions;
+    }
+
+    public byte[] inlineCache() {
+        return inlineCache;
+    }
+
+    public TierState state() {
+        return state;
+    }
+
+    /**
+     * @return 帧建立时函数处于收集类型信息的层级则返回其类型信息，否则为 null
+     */
+    public TypeProfile profile() {
+        return profile;
+    }
+
     public void inc(int in) {
         this.ip += in;
     }
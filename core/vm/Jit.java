@@ -0,0 +1,746 @@
+package core.vm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import core.env.CompiledFunction;
+import core.env.Int;
+import core.env.Obj;
+import core.env.ObjType;
+import core.is.InstructionSet;
+import core.is.Opcode;
+import core.vm.BytecodeWriter.Code;
+import core.vm.BytecodeWriter.Label;
+
+import static core.vm.BytecodeWriter.*;
+
+/**
+ * 方法级即时编译器
+ * <p> 函数在收集类型信息的层级中变热后（见 Vm 的分层执行策略），把它的字节码翻译成一个 JVM 隐藏类，交给 HotSpot 继续编译成机器码。
+ * 生成的代码用 JVM 局部变量代替虚拟机栈：函数的每个局部变量、操作数栈的每个位置各对应一个 JVM 局部变量，
+ * 每条指令前后 JVM 操作数栈都为空，操作数栈的深度在编译时算好。</p>
+ * <p> 整数运算、比较和条件跳转生成 JVM 整数指令，执行时先检查操作数类型（类型守卫）。
+ * 守卫失败（如 Add 遇到字符串）、除数为 0、跳转条件不是布尔值时退优化：把局部变量和操作数栈写回虚拟机栈，
+ * 从这条指令开始交给解释器执行，错误信息也由解释器给出。函数回到收集类型信息的层级，之后重新编译。</p>
+ * <p> 编译时参考解释器收集的类型信息（{@link TypeProfile}）：见过非整数操作数的算术和比较指令不做整数假设，
+ * 调用虚拟机按解释器的规则计算，不会因为类型守卫反复退优化。</p>
+ * <p> 只编译参数不超过 {@link #MAX_ARGS} 个、只用到常量、变量读写、算术、比较、跳转、调用和返回指令的函数，
+ * 用到数组、哈希表、闭包创建等指令的函数始终解释执行。</p>
+ */
+public class Jit {
+    /**
+     * 可以编译的函数的最大参数个数
+     */
+    public static final int MAX_ARGS = 4;
+
+    /**
+     * 函数开始收集类型信息后，调用次数再达到多少时编译，设置为 0 时关闭即时编译
+     */
+    public static final int THRESHOLD = Integer.getInteger("cho.jit.threshold", 1000);
+
+    /**
+     * 退优化超过这个次数的函数不再编译
+     */
+    public static final int MAX_DEOPTS = 3;
+
+    /**
+     * 编译的代码之间嵌套调用的最大深度，超过后改为解释执行，避免占用过多 Java 栈
+     */
+    public static final int MAX_DEPTH = 256;
+
+    private static final String OBJ = "core/env/Obj";
+    private static final String INT = "core/env/Int";
+    private static final String BOOL = "core/env/Bool";
+    private static final String NULL = "core/env/NULL";
+    private static final String CLOSURE = "core/env/Closure";
+    private static final String VM = "core/vm/Vm";
+    private static final String CODE = "core/vm/JitCode";
+    private static final String CALL_DESC = "(Lcore/vm/Vm;Lcore/env/Closure;"
+            + "Lcore/env/Obj;Lcore/env/Obj;Lcore/env/Obj;Lcore/env/Obj;)Lcore/env/Obj;";
+
+    /**
+     * call 方法的参数：this, vm, closure, a0..a3，之后是函数的局部变量和操作数栈
+     */
+    private static final int VM_LOCAL = 1;
+    private static final int CLOSURE_LOCAL = 2;
+    private static final int ARG_LOCAL = 3;
+    private static final int FIRST_LOCAL = 7;
+    private static final int MAX_STACK = 8;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final CompiledFunction fn;
+    private final Vm vm;
+    private final byte[] code;
+    private final TypeProfile profile;
+
+    private int numLocals;
+    private int maxDepth;
+    private int[] depth;
+    private boolean[] target;
+
+    private BytecodeWriter writer;
+    private Code out;
+    private Label[] labels;
+    private HashMap<Integer, Label> deopts = new HashMap<>();
+    private ArrayList<int[]> deoptStates = new ArrayList<>();
+    private ArrayList<Label> deoptLabels = new ArrayList<>();
+    private ArrayList<int[]> jumpStubs = new ArrayList<>();
+    private ArrayList<Label> jumpStubLabels = new ArrayList<>();
+    private Label error;
+    private ArrayList<Obj> consts = new ArrayList<>();
+    private HashMap<Integer, Integer> constIndex = new HashMap<>();
+
+    private Jit(CompiledFunction fn, Vm vm) {
+        this.fn = fn;
+        this.vm = vm;
+        this.code = fn.getInstructions();
+        this.profile = TierState.of(fn).profile();
+    }
+
+    /**
+     * 编译函数
+     * @param vm 执行函数的虚拟机，编译时从中取出函数用到的常量
+     * @return 编译的代码，函数不支持编译或生成的类无法加载时返回 null
+     */
+    public static JitCode compile(CompiledFunction fn, Vm vm) {
+        if (fn.paramCount() > MAX_ARGS) {
+            return null;
+        }
+        Jit jit = new Jit(fn, vm);
+        if (!jit.analyze()) {
+            return null;
+        }
+        byte[] bytes = jit.generate();
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = LOOKUP.defineHiddenClass(bytes, true);
+            MethodHandle ctor = lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, Obj[].class));
+            return (JitCode) ctor.invoke(jit.consts.toArray(new Obj[0]));
+        } catch (Throwable e) {
+            // 生成的类无法加载时继续解释执行
+            return null;
+        }
+    }
+
+    /**
+     * 类型信息中 ip 处的操作数是否都是整数，没有记录的位置（如还没执行过的分支）按整数处理
+     */
+    private boolean intSite(int ip) {
+        return profile == null || profile.types(ip) == 0 || profile.only(ip, ObjType.INTEGER);
+    }
+
+    private Opcode opcode(int ip) {
+        return InstructionSet.opcodeOf(code[ip]);
+    }
+
+    private int u8(int pos) {
+        return code[pos] & 0xFF;
+    }
+
+    private int u16(int pos) {
+        return ((code[pos] & 0xFF) << 8) | (code[pos + 1] & 0xFF);
+    }
+
+    private int jumpTarget(int ip) {
+        int len = InstructionSet.lengthOf(code[ip]);
+        int offsetPos = opcode(ip) == Opcode.LtLocalConstJf ? ip + 5 : ip + 1;
+        return ip + len + (short) u16(offsetPos);
+    }
+
+    /**
+     * 检查函数是否只用到支持的指令，并沿控制流算出每条指令执行前的操作数栈深度
+     */
+    private boolean analyze() {
+        int n = code.length;
+        if (n == 0) {
+            return false;
+        }
+        boolean[] start = new boolean[n];
+        int opcodes = Opcode.values().length;
+        for (int ip = 0; ip < n; ip += InstructionSet.lengthOf(code[ip])) {
+            if (code[ip] < 0 || code[ip] >= opcodes) {
+                return false;
+            }
+            start[ip] = true;
+        }
+
+        numLocals = fn.paramCount();
+        if (opcode(0) == Opcode.Allocate) {
+            numLocals += u16(1);
+        }
+        depth = new int[n];
+        Arrays.fill(depth, -1);
+        target = new boolean[n];
+        int[] work = new int[n];
+        int top = 0;
+        depth[0] = 0;
+        work[top++] = 0;
+
+        while (top > 0) {
+            int ip = work[--top];
+            int d = depth[ip];
+            int pop = 0;
+            int push = 0;
+            boolean falls = true;
+            boolean jumps = false;
+            switch (opcode(ip)) {
+                case Nop:
+                    break;
+                case Allocate:
+                    if (ip != 0) {
+                        return false;
+                    }
+                    break;
+                case NULL: case True: case False: case Load:
+                case GetGlobal: case GetBuiltin: case GetFree: case CurClosure:
+                    push = 1;
+                    break;
+                case GetLocal:
+                    if (u16(ip + 1) >= numLocals) {
+                        return false;
+                    }
+                    push = 1;
+                    break;
+                case SetLocal: case SetLocalNoPush:
+                    if (u16(ip + 1) >= numLocals) {
+                        return false;
+                    }
+                    pop = 1;
+                    break;
+                case Assign:
+                    if (u16(ip + 1) >= numLocals) {
+                        return false;
+                    }
+                    pop = 1;
+                    push = 1;
+                    break;
+                case SetGlobal: case SetGlobalNoPush: case Pop:
+                    pop = 1;
+                    break;
+                case Add: case Sub: case Mul: case Div:
+                case Eq: case Ne: case Gt: case Ge: case Lt: case Le:
+                    pop = 2;
+                    push = 1;
+                    break;
+                case Neg: case Not:
+                    pop = 1;
+                    push = 1;
+                    break;
+                case AddLocals:
+                    if (u16(ip + 1) >= numLocals || u16(ip + 3) >= numLocals) {
+                        return false;
+                    }
+                    push = 1;
+                    break;
+                case Jf:
+                    pop = 1;
+                    jumps = true;
+                    break;
+                case J:
+                    jumps = true;
+                    falls = false;
+                    break;
+                case LtLocalConstJf:
+                    if (u16(ip + 1) >= numLocals || !(vm.constant(u16(ip + 3)) instanceof Int)) {
+                        return false;
+                    }
+                    jumps = true;
+                    break;
+                case Call:
+                    if (u8(ip + 1) > MAX_ARGS) {
+                        return false;
+                    }
+                    pop = u8(ip + 1) + 1;
+                    push = 1;
+                    break;
+                case ReturnValue:
+                    pop = 1;
+                    falls = false;
+                    break;
+                case Return:
+                    falls = false;
+                    break;
+                default:
+                    return false;
+            }
+            if (d < pop) {
+                return false;
+            }
+            int next = d - pop + push;
+            maxDepth = Math.max(maxDepth, next);
+            if (jumps) {
+                int t = jumpTarget(ip);
+                if (t < 0 || t >= n || !start[t]) {
+                    return false;
+                }
+                target[t] = true;
+                if (depth[t] < 0) {
+                    depth[t] = next;
+                    work[top++] = t;
+                } else if (depth[t] != next) {
+                    return false;
+                }
+            }
+            if (falls) {
+                int f = ip + InstructionSet.lengthOf(code[ip]);
+                if (f >= n) {
+                    return false;
+                }
+                if (depth[f] < 0) {
+                    depth[f] = next;
+                    work[top++] = f;
+                } else if (depth[f] != next) {
+                    return false;
+                }
+            }
+        }
+        return FIRST_LOCAL + numLocals + maxDepth <= 255;
+    }
+
+    private int local(int index) {
+        return FIRST_LOCAL + index;
+    }
+
+    private int slot(int index) {
+        return FIRST_LOCAL + numLocals + index;
+    }
+
+    private Label label(int ip) {
+        if (labels[ip] == null) {
+            labels[ip] = new Label();
+        }
+        return labels[ip];
+    }
+
+    /**
+     * 在 ip 处退优化的代码，同一条指令共用一段
+     */
+    private Label deopt(int ip) {
+        Label l = deopts.get(ip);
+        if (l == null) {
+            l = new Label();
+            deopts.put(ip, l);
+            deoptStates.add(new int[]{ip, depth[ip]});
+            deoptLabels.add(l);
+        }
+        return l;
+    }
+
+    private int constant(int index) {
+        Integer pos = constIndex.get(index);
+        if (pos == null) {
+            pos = consts.size();
+            consts.add(vm.constant(index));
+            constIndex.put(index, pos);
+        }
+        return pos;
+    }
+
+    private byte[] generate() {
+        writer = new BytecodeWriter("core/vm/CompiledCode", CODE);
+        labels = new Label[code.length];
+        error = new Label();
+
+        Code init = writer.new Code();
+        init.aload(0);
+        init.aload(1);
+        init.invoke(INVOKESPECIAL, CODE, "<init>", "([Lcore/env/Obj;)V");
+        init.op(RETURN);
+        init.finish();
+        writer.method(ACC_PUBLIC, "<init>", "([Lcore/env/Obj;)V", init, 2, 2, null);
+
+        out = writer.new Code();
+        for (int i = 0; i < numLocals; i++) {
+            if (i < fn.paramCount()) {
+                out.aload(ARG_LOCAL + i);
+            } else {
+                out.op(ACONST_NULL);
+            }
+            out.astore(local(i));
+        }
+        for (int i = 0; i < maxDepth; i++) {
+            out.op(ACONST_NULL);
+            out.astore(slot(i));
+        }
+
+        for (int ip = 0; ip < code.length; ip += InstructionSet.lengthOf(code[ip])) {
+            if (depth[ip] < 0) {
+                continue;
+            }
+            out.bind(label(ip));
+            out.frame();
+            if (fusesWithJump(ip)) {
+                emitCompareJump(ip);
+                ip += InstructionSet.lengthOf(code[ip]);
+                continue;
+            }
+            emit(ip);
+        }
+
+        for (int i = 0; i < jumpStubs.size(); i++) {
+            emitJumpStub(jumpStubs.get(i), jumpStubLabels.get(i));
+        }
+        for (int i = 0; i < deoptStates.size(); i++) {
+            emitDeopt(deoptStates.get(i), deoptLabels.get(i));
+        }
+        out.bind(error);
+        out.frame();
+        out.op(ACONST_NULL);
+        out.op(ARETURN);
+
+        if (!out.finish()) {
+            return null;
+        }
+        int[] frameLocals = new int[FIRST_LOCAL + numLocals + maxDepth];
+        Arrays.fill(frameLocals, writer.classRef(OBJ));
+        frameLocals[0] = writer.thisClass();
+        frameLocals[VM_LOCAL] = writer.classRef(VM);
+        frameLocals[CLOSURE_LOCAL] = writer.classRef(CLOSURE);
+        writer.method(ACC_PUBLIC, "call", CALL_DESC, out, MAX_STACK, frameLocals.length, frameLocals);
+        return writer.toByteArray();
+    }
+
+    /**
+     * 比较指令后紧跟 Jf，并且 Jf 不是跳转目标时，合并成一条 JVM 条件跳转
+     */
+    private boolean fusesWithJump(int ip) {
+        switch (opcode(ip)) {
+            case Eq: case Ne: case Gt: case Ge: case Lt: case Le:
+                int next = ip + InstructionSet.lengthOf(code[ip]);
+                return opcode(next) == Opcode.Jf && !target[next] && intSite(ip);
+            default:
+                return false;
+        }
+    }
+
+    private void emit(int ip) {
+        int d = depth[ip];
+        switch (opcode(ip)) {
+            case Nop: case Allocate:
+                break;
+            case NULL:
+                out.getstatic(NULL, "INSTANCE", "Lcore/env/NULL;");
+                out.astore(slot(d));
+                break;
+            case True:
+                out.getstatic(BOOL, "TRUE", "Lcore/env/Bool;");
+                out.astore(slot(d));
+                break;
+            case False:
+                out.getstatic(BOOL, "FALSE", "Lcore/env/Bool;");
+                out.astore(slot(d));
+                break;
+            case Load:
+                out.aload(0);
+                out.getfield(CODE, "consts", "[Lcore/env/Obj;");
+                out.iconst(constant(u16(ip + 1)));
+                out.op(AALOAD);
+                out.astore(slot(d));
+                break;
+            case GetLocal:
+                out.aload(local(u16(ip + 1)));
+                out.astore(slot(d));
+                break;
+            case SetLocal: case Assign:
+                out.aload(slot(d - 1));
+                out.astore(local(u16(ip + 1)));
+                break;
+            case SetLocalNoPush:
+                out.aload(slot(d - 1));
+                out.astore(local(u16(ip + 1)));
+                emitLastPoped(d - 1);
+                break;
+            case GetGlobal:
+                out.aload(VM_LOCAL);
+                out.iconst(u16(ip + 1));
+                out.invoke(INVOKEVIRTUAL, VM, "jitGetGlobal", "(I)Lcore/env/Obj;");
+                out.astore(slot(d));
+                break;
+            case SetGlobal:
+                emitSetGlobal(ip, d);
+                break;
+            case SetGlobalNoPush:
+                emitSetGlobal(ip, d);
+                emitLastPoped(d - 1);
+                break;
+            case GetBuiltin:
+                out.aload(VM_LOCAL);
+                out.iconst(u8(ip + 1));
+                out.invoke(INVOKEVIRTUAL, VM, "jitGetBuiltin", "(I)Lcore/env/Obj;");
+                out.astore(slot(d));
+                break;
+            case GetFree:
+                out.aload(CLOSURE_LOCAL);
+                out.invoke(INVOKEVIRTUAL, CLOSURE, "freeVars", "()Ljava/util/ArrayList;");
+                out.iconst(u8(ip + 1));
+                out.invoke(INVOKEVIRTUAL, "java/util/ArrayList", "get", "(I)Ljava/lang/Object;");
+                out.type(CHECKCAST, OBJ);
+                out.astore(slot(d));
+                break;
+            case CurClosure:
+                out.aload(CLOSURE_LOCAL);
+                out.astore(slot(d));
+                break;
+            case Pop:
+                emitLastPoped(d - 1);
+                break;
+            case Add: case Sub: case Mul: case Div:
+                emitArithmetic(ip, d);
+                break;
+            case Eq: case Ne: case Gt: case Ge: case Lt: case Le:
+                if (!intSite(ip)) {
+                    emitOperator(ip, slot(d - 1), slot(d - 2), slot(d - 2));
+                    break;
+                }
+                emitIntGuards(ip, slot(d - 1), slot(d - 2));
+                emitIntValue(slot(d - 1));
+                emitIntValue(slot(d - 2));
+                out.invoke(INVOKESTATIC, CODE, opcode(ip).name().toLowerCase(), "(II)Lcore/env/Bool;");
+                out.astore(slot(d - 2));
+                break;
+            case Neg:
+                emitIntGuards(ip, slot(d - 1));
+                emitIntValue(slot(d - 1));
+                out.op(INEG);
+                emitBox();
+                out.astore(slot(d - 1));
+                break;
+            case Not:
+                out.aload(slot(d - 1));
+                out.type(INSTANCEOF, BOOL);
+                out.jump(IFEQ, deopt(ip));
+                out.aload(slot(d - 1));
+                out.type(CHECKCAST, BOOL);
+                out.invoke(INVOKEVIRTUAL, BOOL, "getValue", "()Z");
+                out.iconst(1);
+                out.op(IXOR);
+                out.invoke(INVOKESTATIC, BOOL, "valueOf", "(Z)Lcore/env/Bool;");
+                out.astore(slot(d - 1));
+                break;
+            case AddLocals:
+                if (!intSite(ip)) {
+                    emitOperator(ip, local(u16(ip + 3)), local(u16(ip + 1)), slot(d));
+                    break;
+                }
+                emitIntGuards(ip, local(u16(ip + 1)), local(u16(ip + 3)));
+                emitIntValue(local(u16(ip + 3)));
+                emitIntValue(local(u16(ip + 1)));
+                out.op(IADD);
+                emitBox();
+                out.astore(slot(d));
+                break;
+            case J:
+                out.jump(GOTO, label(jumpTarget(ip)));
+                break;
+            case Jf:
+            {
+                Label slow = new Label();
+                jumpStubs.add(new int[]{ip, d});
+                jumpStubLabels.add(slow);
+                out.aload(slot(d - 1));
+                out.type(INSTANCEOF, BOOL);
+                out.jump(IFEQ, slow);
+                out.aload(slot(d - 1));
+                out.type(CHECKCAST, BOOL);
+                out.invoke(INVOKEVIRTUAL, BOOL, "getValue", "()Z");
+                out.jump(IFEQ, label(jumpTarget(ip)));
+                break;
+            }
+            case LtLocalConstJf:
+            {
+                int l = local(u16(ip + 1));
+                emitIntGuards(ip, l);
+                emitIntValue(l);
+                out.iconst(((Int) vm.constant(u16(ip + 3))).getValue());
+                out.jump(IF_ICMPGE, label(jumpTarget(ip)));
+                break;
+            }
+            case Call:
+                emitCall(u8(ip + 1), d);
+                break;
+            case ReturnValue:
+                out.aload(slot(d - 1));
+                out.op(ARETURN);
+                break;
+            case Return:
+                out.getstatic(NULL, "INSTANCE", "Lcore/env/NULL;");
+                out.op(ARETURN);
+                break;
+            default:
+                throw new IllegalStateException("unsupported instruction: " + opcode(ip));
+        }
+    }
+
+    private void emitArithmetic(int ip, int d) {
+        int left = slot(d - 1);
+        int right = slot(d - 2);
+        if (!intSite(ip)) {
+            emitOperator(ip, left, right, right);
+            return;
+        }
+        emitIntGuards(ip, left, right);
+        if (opcode(ip) == Opcode.Div) {
+            emitIntValue(right);
+            out.jump(IFEQ, deopt(ip));
+        }
+        emitIntValue(left);
+        emitIntValue(right);
+        switch (opcode(ip)) {
+            case Add:
+                out.op(IADD);
+                break;
+            case Sub:
+                out.op(ISUB);
+                break;
+            case Mul:
+                out.op(IMUL);
+                break;
+            default:
+                out.op(IDIV);
+                break;
+        }
+        emitBox();
+        out.astore(right);
+    }
+
+    /**
+     * 比较和 Jf 合并：两个操作数都是整数时比较结果不成立直接跳转
+     */
+    private void emitCompareJump(int ip) {
+        int d = depth[ip];
+        int jf = ip + InstructionSet.lengthOf(code[ip]);
+        emitIntGuards(ip, slot(d - 1), slot(d - 2));
+        emitIntValue(slot(d - 1));
+        emitIntValue(slot(d - 2));
+        int unless;
+        switch (opcode(ip)) {
+            case Eq:
+                unless = IF_ICMPNE;
+                break;
+            case Ne:
+                unless = IF_ICMPEQ;
+                break;
+            case Gt:
+                unless = IF_ICMPLE;
+                break;
+            case Ge:
+                unless = IF_ICMPLT;
+                break;
+            case Lt:
+                unless = IF_ICMPGE;
+                break;
+            default:
+                unless = IF_ICMPGT;
+                break;
+        }
+        out.jump(unless, label(jumpTarget(jf)));
+    }
+
+    /**
+     * 调用虚拟机计算 ip 处的运算，结果存入 result
+     */
+    private void emitOperator(int ip, int left, int right, int result) {
+        out.aload(VM_LOCAL);
+        out.iconst(opcode(ip) == Opcode.AddLocals ? Opcode.Add.ordinal() : code[ip]);
+        out.aload(left);
+        out.aload(right);
+        out.invoke(INVOKEVIRTUAL, VM, "jitOperator", "(ILcore/env/Obj;Lcore/env/Obj;)Lcore/env/Obj;");
+        out.op(DUP);
+        out.astore(result);
+        out.jump(IFNULL, error);
+    }
+
+    private void emitCall(int argc, int d) {
+        int callee = slot(d - argc - 1);
+        out.aload(VM_LOCAL);
+        out.aload(callee);
+        out.iconst(argc);
+        for (int i = 0; i < MAX_ARGS; i++) {
+            if (i < argc) {
+                out.aload(slot(d - argc + i));
+            } else {
+                out.op(ACONST_NULL);
+            }
+        }
+        out.invoke(INVOKEVIRTUAL, VM, "jitCall",
+                "(Lcore/env/Obj;ILcore/env/Obj;Lcore/env/Obj;Lcore/env/Obj;Lcore/env/Obj;)Lcore/env/Obj;");
+        out.op(DUP);
+        out.astore(callee);
+        out.jump(IFNULL, error);
+    }
+
+    private void emitSetGlobal(int ip, int d) {
+        out.aload(VM_LOCAL);
+        out.iconst(u16(ip + 1));
+        out.aload(slot(d - 1));
+        out.invoke(INVOKEVIRTUAL, VM, "jitSetGlobal", "(ILcore/env/Obj;)V");
+    }
+
+    private void emitLastPoped(int slot) {
+        out.aload(VM_LOCAL);
+        out.aload(slot(slot));
+        out.putfield(VM, "lastPoped", "Lcore/env/Obj;");
+    }
+
+    private void emitIntGuards(int ip, int... locals) {
+        for (int l : locals) {
+            out.aload(l);
+            out.type(INSTANCEOF, INT);
+            out.jump(IFEQ, deopt(ip));
+        }
+    }
+
+    private void emitIntValue(int local) {
+        out.aload(local);
+        out.type(CHECKCAST, INT);
+        out.invoke(INVOKEVIRTUAL, INT, "getValue", "()I");
+    }
+
+    private void emitBox() {
+        out.invoke(INVOKESTATIC, INT, "valueOf", "(I)Lcore/env/Int;");
+    }
+
+    /**
+     * Jf 的条件不是布尔值时：空值跳转，其余情况退优化由解释器报错
+     */
+    private void emitJumpStub(int[] state, Label stub) {
+        int ip = state[0];
+        out.bind(stub);
+        out.frame();
+        out.aload(slot(state[1] - 1));
+        out.type(INSTANCEOF, NULL);
+        out.jump(IFNE, label(jumpTarget(ip)));
+        out.jump(GOTO, deopt(ip));
+    }
+
+    /**
+     * 把局部变量和操作数栈交给虚拟机，从 ip 处继续解释执行
+     */
+    private void emitDeopt(int[] state, Label stub) {
+        int ip = state[0];
+        int d = state[1];
+        out.bind(stub);
+        out.frame();
+        out.aload(VM_LOCAL);
+        out.aload(CLOSURE_LOCAL);
+        out.iconst(ip);
+        out.iconst(numLocals + d);
+        out.type(ANEWARRAY, OBJ);
+        for (int i = 0; i < numLocals + d; i++) {
+            out.op(DUP);
+            out.iconst(i);
+            out.aload(i < numLocals ? local(i) : slot(i - numLocals));
+            out.op(AASTORE);
+        }
+        out.invoke(INVOKEVIRTUAL, VM, "jitDeopt", "(Lcore/env/Closure;I[Lcore/env/Obj;)Lcore/env/Obj;");
+        out.op(ARETURN);
+    }
+}
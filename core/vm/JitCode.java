@@ -0,0 +1,54 @@
+package core.vm;
+
+import core.env.Bool;
+import core.env.Closure;
+import core.env.Obj;
+
+/**
+ * 即时编译生成的函数代码
+ * <p> 每个被编译的函数对应一个由 {@link Jit} 生成的隐藏类，继承本类并实现 {@link #call}。
+ * 生成的代码用到的常量在编译时取出，保存在 consts 中。</p>
+ */
+public abstract class JitCode {
+    protected final Obj[] consts;
+
+    protected JitCode(Obj[] consts) {
+        this.consts = consts;
+    }
+
+    /**
+     * 执行函数，参数少于 {@link Jit#MAX_ARGS} 个时其余参数为 null
+     * @param vm 调用函数的虚拟机，用于访问全局变量、调用其他函数和退优化
+     * @param closure 被调用的闭包
+     * @return 函数的返回值，发生运行时错误时返回 null，错误已记录在虚拟机中
+     */
+    public abstract Obj call(Vm vm, Closure closure, Obj a0, Obj a1, Obj a2, Obj a3);
+
+    /*
+     * 整数比较，生成的代码调用这些方法得到布尔对象，避免在指令中间产生分支
+     */
+
+    public static Bool eq(int left, int right) {
+        return Bool.valueOf(left == right);
+    }
+
+    public static Bool ne(int left, int right) {
+        return Bool.valueOf(left != right);
+    }
+
+    public static Bool gt(int left, int right) {
+        return Bool.valueOf(left > right);
+    }
+
+    public static Bool ge(int left, int right) {
+        return Bool.valueOf(left >= right);
+    }
+
+    public static Bool lt(int left, int right) {
+        return Bool.valueOf(left < right);
+    }
+
+    public static Bool le(int left, int right) {
+        return Bool.valueOf(left <= right);
+    }
+}
@@ -0,0 +1,137 @@
+package core.vm;
+
+import core.env.CompiledFunction;
+import core.env.ExecutionState;
+
+/**
+ * 函数的分层执行状态：调用次数、回边次数、执行层级、类型信息和即时编译的结果
+ * <p> 由虚拟机在第一次用到时创建，保存在 {@link CompiledFunction} 中，之后不再查找。</p>
+ */
+public class TierState implements ExecutionState {
+    /**
+     * 执行层级：解释执行、解释执行并收集类型信息、执行即时编译的代码
+     */
+    public enum Tier {
+        INTERPRETER,
+        PROFILING,
+        COMPILED
+    }
+
+    private final int length;
+    private long calls;
+    private long backEdges;
+    private long tierStart;
+    private Tier tier = Tier.INTERPRETER;
+    private TypeProfile profile;
+    private int deopts;
+    private JitCode jitCode;
+    private boolean jitDisabled;
+
+    private TierState(int length) {
+        this.length = length;
+    }
+
+    /**
+     * @return 函数的分层执行状态，还没有时创建
+     */
+    public static TierState of(CompiledFunction fn) {
+        ExecutionState state = fn.executionState();
+        if (state == null) {
+            state = new TierState(fn.getInstructions().length);
+            fn.setExecutionState(state);
+        }
+        return (TierState) state;
+    }
+
+    void countCall() {
+        calls++;
+    }
+
+    public long calls() {
+        return calls;
+    }
+
+    /**
+     * 解释执行时每次向后跳转（循环的一次迭代）计数一次，只用于查看，不计入热度
+     */
+    void countBackEdge() {
+        backEdges++;
+    }
+
+    public long backEdges() {
+        return backEdges;
+    }
+
+    /**
+     * 进入当前执行层级以来的调用次数
+     * <p> 层级只在调用函数时检查，正在执行的循环不会切换到编译的代码（没有栈上替换），
+     * 所以热度只按调用次数计算，回边次数不计入。</p>
+     */
+    long hotness() {
+        return calls - tierStart;
+    }
+
+    public Tier tier() {
+        return tier;
+    }
+
+    private void setTier(Tier tier) {
+        this.tier = tier;
+        tierStart = calls;
+    }
+
+    /**
+     * @return 类型信息，还没有开始收集时返回 null
+     */
+    public TypeProfile profile() {
+        return profile;
+    }
+
+    /**
+     * 进入收集类型信息的层级，之前收集的类型信息保留
+     */
+    void startProfiling() {
+        if (profile == null) {
+            profile = new TypeProfile(length);
+        }
+        setTier(Tier.PROFILING);
+    }
+
+    /**
+     * @return 即时编译的代码，还没有编译时返回 null
+     */
+    JitCode jitCode() {
+        return jitCode;
+    }
+
+    void setJitCode(JitCode jitCode) {
+        this.jitCode = jitCode;
+        setTier(Tier.COMPILED);
+    }
+
+    /**
+     * 编译的代码类型守卫失败，回到收集类型信息的层级，之后按新的类型信息重新编译
+     */
+    void deoptimize() {
+        jitCode = null;
+        deopts++;
+        setTier(Tier.PROFILING);
+    }
+
+    public int deopts() {
+        return deopts;
+    }
+
+    /**
+     * 无法编译或退优化次数过多，此后始终解释执行，不再收集类型信息
+     */
+    void disableJit() {
+        jitCode = null;
+        jitDisabled = true;
+        setTier(Tier.INTERPRETER);
+    }
+
+    boolean jitDisabled() {
+        return jitDisabled;
+    }
+}
@@ -0,0 +1,55 @@
+package core.vm;
+
+import core.env.Obj;
+import core.env.ObjType;
+
+/**
+ * 函数中各指令位置见过的值类型
+ * <p> 与指令等长，每个位置是一个位掩码，每种 {@link ObjType} 占一位。
+ * 算术和比较指令记录两个操作数的类型，Index 记录被索引的对象的类型，Call 记录被调用的对象的类型。</p>
+ */
+public class TypeProfile {
+    private final int[] sites;
+
+    public TypeProfile(int length) {
+        sites = new int[length];
+    }
+
+    public void record(int ip, Obj value) {
+        sites[ip] |= 1 << value.type().ordinal();
+    }
+
+    public void record(int ip, Obj left, Obj right) {
+        sites[ip] |= (1 << left.type().ordinal()) | (1 << right.type().ordinal());
+    }
+
+    /**
+     * @return ip 处见过的类型的位掩码，没有记录时为 0
+     */
+    public int types(int ip) {
+        return sites[ip];
+    }
+
+    /**
+     * ip 处是否只见过 type 类型的值，没有记录时返回 false
+     */
+    public boolean only(int ip, ObjType type) {
+        return sites[ip] == 1 << type.ordinal();
+    }
+
+    /**
+     * 把位掩码写成类型名，如 INTEGER|STRING
+     */
+    public static String describe(int types) {
+        StringBuilder sb = new StringBuilder();
+        for (ObjType t : ObjType.values()) {
+            if ((types & (1 << t.ordinal())) != 0) {
+                if (sb.length() > 0) {
+                    sb.append('|');
+                }
+                sb.append(t);
+            }
+        }
+        return sb.toString();
+    }
+}
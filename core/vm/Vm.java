@@ -1,8 +1,6 @@
 package core.vm;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Stack;
 
 import core.compiler.CompiledProgram;
 import core.env.Array;
@@ -11,8 +9,6 @@ import core.env.Closure;
 import core.env.CompiledFunction;
 import core.env.Error;
 import core.env.Hash;
-import core.env.HashKey;
-import core.env.HashPair;
 import core.env.Int;
 import core.env.NULL;
 import core.env.Obj;
@@ -25,47 +21,121 @@ import core.is.Opcode;
 
 public class Vm {
 
-    private VmStack stack = new VmStack(1024);
-    private ArrayList<Obj> constants;
-    private Stack<Frame> frames = new Stack<>();
-
-    private Obj lastPoped = new NULL();
-    private InstructionSet is = new InstructionSet();
+    /**
+     * 默认的最大调用深度
+     */
+    public static final int DEFAULT_MAX_FRAMES = 4096;
+
+    /**
+     * 函数的调用次数达到多少后开始收集类型信息
+     */
+    public static final int PROFILE_THRESHOLD = Integer.getInteger("cho.profile.threshold", 100);
+
+    private VmStack stack;
+    private CompiledProgram program;
+
+    /**
+     * 常量缓存，常量在第一次 Load 时从程序中取出（从文件加载时此时才解码）
+     */
+    private Obj[] constants;
+
+    /**
+     * 调用栈，Frame 对象在第一次用到时创建，之后反复复用
+     */
+    private Frame[] frames;
+    private int frameIndex = -1;
+    private Frame frame;
+    private byte[] instructions;
+    private byte[] inlineCache;
+    private TypeProfile profile;
+
+    /**
+     * Index / SetArray 指令位置上的内联缓存状态，记录上次见到的接收者和索引类型组合
+     */
+    private static final byte IC_EMPTY = 0;
+    private static final byte IC_ARRAY_INT = 1;
+    private static final byte IC_HASH_INT = 2;
+    private static final byte IC_HASH_STR = 3;
+    private static final byte IC_HASH_BOOL = 4;
+
+    /**
+     * 编译的代码也会写入，因此不是 private
+     */
+    Obj lastPoped = NULL.INSTANCE;
+    private static final int CALL_LEN = InstructionSet.lengthOf(Opcode.Call);
+    private static final int RETURN_VALUE_LEN = InstructionSet.lengthOf(Opcode.ReturnValue);
+    private static final int RETURN_LEN = InstructionSet.lengthOf(Opcode.Return);
     private Builtins builtins = new Builtins();
     private boolean errorHappened = false;
+    private Error error;
+
+    /**
+     * 当前嵌套执行的编译代码层数，与 frameIndex 一起计入调用深度
+     */
+    private int jitDepth;
     public Vm(CompiledProgram cp) {
-        constants = cp.consts();
-        ArrayList<Byte> instructions = cp.instructions();
-        CompiledFunction mcf = new CompiledFunction(instructions, 0);
+        this(cp, DEFAULT_MAX_FRAMES);
+    }
+
+    public Vm(CompiledProgram cp, int maxFrames) {
+        this(cp, maxFrames, VmStack.DEFAULT_MAX_SIZE);
+    }
+
+    public Vm(CompiledProgram cp, int maxFrames, int maxStackSize) {
+        stack = new VmStack(VmStack.DEFAULT_INITIAL_SIZE, maxStackSize);
+        program = cp;
+        constants = new Obj[cp.constCount()];
+        frames = new Frame[maxFrames];
+        CompiledFunction mcf = new CompiledFunction(cp.code(), 0);
         Closure mc = new Closure(mcf, new ArrayList<>());
-        Frame mf = new Frame(0, 0, mc);
-        frames.push(mf);
+        pushFrame(0, 0, mc);
     }
 
     public Obj run() {
+        execute(0);
+        if (errorHappened) {
+            return error;
+        }
+        return lastPoped;
+    }
+
+    /**
+     * 解释执行，直到下标为 stop 的帧返回；stop 为 0 时执行到主程序结束
+     * @return 下标为 stop 的帧的返回值，主程序结束或发生错误时返回 null
+     */
+    private Obj execute(int stop) {
         Opcode code;
+        int op;
         int tmp;
         Obj tmpObj;
+        Obj tmpObj2;
         int ip;
-        while (curFrame().ip() < curInstructions().size()) {
-            ip = curFrame().ip();
+        while (frame.ip() < instructions.length) {
+            ip = frame.ip();
 
 
             //System.out.println("ip: " + ip + "stack size:" + stack.size());
             
-            code = Opcode.values()[curInstructions().get(ip).intValue()];
+            op = instructions[ip];
+            code = InstructionSet.opcodeOf(op);
             switch (code) {
                 case NULL:
-                    stack.push(new NULL());
+                    stack.push(NULL.INSTANCE);
                     break;
                 case Load:
-                    tmp = readInt(ip + 1, 2);
-                    stack.push(constants.get(tmp));
+                    tmp = readUint16(ip + 1);
+                    stack.push(constant(tmp));
                     break;
                 case Add: case Sub: case Mul: case Div:
+                    if (profile != null) {
+                        profile.record(ip, stack.get(stack.sp() - 1), stack.get(stack.sp() - 2));
+                    }
                     executeInfix(code);
                     break;
                 case Eq: case Ne: case Gt: case Ge: case Lt: case Le:
+                    if (profile != null) {
+                        profile.record(ip, stack.get(stack.sp() - 1), stack.get(stack.sp() - 2));
+                    }
                     executeComparison(code);
                     break;
                 case Neg: case Not:
@@ -75,86 +145,98 @@ public class Vm {
                     lastPoped = stack.pop();
                     break;
                 case True:
-                    stack.push(new Bool(true));
+                    stack.push(Bool.TRUE);
                     break;
                 case False:
-                    stack.push(new Bool(false));
+                    stack.push(Bool.FALSE);
                     break;
                 case Array:
-                    tmp = readInt(ip + 1, 2);
+                    tmp = readUint16(ip + 1);
                     executeArray(tmp);
                     break;
                 case Hash:
-                    tmp = readInt(ip + 1, 2);
+                    tmp = readUint16(ip + 1);
                     executeHash(tmp);
                     break;
                 case Index:
-                    executeIndex();
+                    if (profile != null) {
+                        profile.record(ip, stack.get(stack.sp() - 2));
+                    }
+                    executeIndex(ip);
                     break;
                 case Allocate:
-                    tmp = readInt(ip + 1, 2);
+                    tmp = readUint16(ip + 1);
                     stack.setSp(stack.sp() + tmp);
                     break;
                 case SetLocal:
-                    tmp = readInt(ip + 1, 2);
+                    tmp = readUint16(ip + 1);
                     tmpObj = stack.pop();
                     stack.set(curFrame().basePtr() + tmp, tmpObj);
                     break;
                 case Assign:
-                    tmp = readInt(ip + 1, 2);
+                    tmp = readUint16(ip + 1);
                     tmpObj = stack.pop();
                     stack.set(curFrame().basePtr() + tmp, tmpObj);
                     stack.push(tmpObj);
                     break;
                 case GetLocal:
-                    tmp = readInt(ip + 1, 2);
+                    tmp = readUint16(ip + 1);
                     stack.push(stack.get(curFrame().basePtr() + tmp));
                     break;
                 case SetGlobal:
-                    tmp = readInt(ip + 1, 2);
+                    tmp = readUint16(ip + 1);
                     tmpObj = stack.pop();
                     stack.set(tmp, tmpObj);
                     break;
                 case GetGlobal:
-                    tmp = readInt(ip + 1, 2);
+                    tmp = readUint16(ip + 1);
                     stack.push(stack.get(tmp));
                     break;
                 case GetBuiltin:
-                    tmp = readInt(ip + 1, 1);
+                    tmp = readUint8(ip + 1);
                     stack.push(builtins.get(tmp));
                     break;
                 case Jf: case J:
                     executeJump(code);
                     break;
                 case Call:
-                    tmp = readInt(ip + 1, 1);
+                    tmp = readUint8(ip + 1);
+                    if (profile != null) {
+                        profile.record(ip, stack.get(stack.sp() - tmp - 1));
+                    }
                     executeCall(tmp);
                     break;
                 case ReturnValue:
                     tmpObj = stack.pop();
-                    Frame f = frames.pop();
-                    curFrame().inc(is.lengthOf(Opcode.Call)-is.lengthOf(Opcode.ReturnValue));
+                    Frame f = popFrame();
                     stack.setSp(f.basePtr() - 1);
+                    if (frameIndex < stop) {
+                        return tmpObj;
+                    }
+                    curFrame().inc(CALL_LEN - RETURN_VALUE_LEN);
                     stack.push(tmpObj);
                     break;
                 case Return:
-                    frames.pop();
-                    stack.setSp(curFrame().basePtr() - 1);
-                    stack.push(new NULL());
-                    curFrame().inc(is.lengthOf(Opcode.Call)-is.lengthOf(Opcode.Return));
+                    f = popFrame();
+                    stack.setSp(f.basePtr() - 1);
+                    if (frameIndex < stop) {
+                        return NULL.INSTANCE;
+                    }
+                    stack.push(NULL.INSTANCE);
+                    curFrame().inc(CALL_LEN - RETURN_LEN);
                     break;
                 case Closure:
-                    tmp = readInt(ip + 1, 2);
-                    int tmp2 = readInt(ip + 3, 1);
+                    tmp = readUint16(ip + 1);
+                    int tmp2 = readUint8(ip + 3);
                     executeClosure(tmp, tmp2);
                     break;
                 case GetFree:
-                    tmp = readInt(ip + 1, 1);
+                    tmp = readUint8(ip + 1);
                     Closure curC = curFrame().closure();
                     stack.push(curC.freeVars().get(tmp));
                     break;
                 case SetFree:
-                    tmp = readInt(ip + 1, 1);
+                    tmp = readUint8(ip + 1);
                     tmpObj = stack.pop();
                     curC = curFrame().closure();
                     curC.freeVars().set(tmp, tmpObj);
@@ -163,34 +245,97 @@ public class Vm {
                     stack.push(curFrame().closure());
                     break;
                 case SetArray:  
-                    executeSetArray();
+                    executeSetArray(ip);
+                    break;
+                case SetLocalNoPush:
+                    tmp = readUint16(ip + 1);
+                    lastPoped = stack.pop();
+                    stack.set(curFrame().basePtr() + tmp, lastPoped);
+                    break;
+                case SetGlobalNoPush:
+                    tmp = readUint16(ip + 1);
+                    lastPoped = stack.pop();
+                    stack.set(tmp, lastPoped);
+                    break;
+                case AddLocals:
+                    tmpObj = stack.get(curFrame().basePtr() + readUint16(ip + 3));
+                    tmpObj2 = stack.get(curFrame().basePtr() + readUint16(ip + 1));
+                    if (profile != null) {
+                        profile.record(ip, tmpObj, tmpObj2);
+                    }
+                    if (tmpObj.type() == ObjType.INTEGER && tmpObj2.type() == ObjType.INTEGER) {
+                        stack.push(Int.valueOf(((Int) tmpObj).getValue() + ((Int) tmpObj2).getValue()));
+                        break;
+                    }
+                    executeInfix(Opcode.Add, tmpObj, tmpObj2);
+                    break;
+                case LtLocalConstJf:
+                    tmpObj = stack.get(curFrame().basePtr() + readUint16(ip + 1));
+                    tmpObj2 = constant(readUint16(ip + 3));
+                    tmp = readInt16(ip + 5);
+                    if (profile != null) {
+                        profile.record(ip, tmpObj, tmpObj2);
+                    }
+                    if (tmpObj.type() == ObjType.INTEGER && tmpObj2.type() == ObjType.INTEGER) {
+                        if (((Int) tmpObj).getValue() >= ((Int) tmpObj2).getValue()) {
+                            curFrame().inc(tmp);
+                        }
+                        break;
+                    }
+                    executeComparison(Opcode.Lt, tmpObj, tmpObj2);
+                    if (!errorHappened) {
+                        jumpUnless(stack.pop(), tmp);
+                    }
                     break;
                 default:
-                    return new Error("unknown instruction: " + code);
+                    runtimeError(new Error("unknown instruction: " + code));
+                    return null;
             }
 
             if (errorHappened) {
                 break;
             }
+            if (stack.error() != null) {
+                runtimeError(stack.error());
+                break;
+            }
 
-            curFrame().inc(is.lengthOf(code));
+            curFrame().inc(InstructionSet.lengthOf(op));
         }
-
-        return lastPoped;
+        return null;
     }
 
     public int stackCount() {
         return stack.sp();
     }
 
+    /**
+     * 主程序对应的函数，可以查看主程序的回边计数
+     */
+    public CompiledFunction mainFunction() {
+        return frames[0].closure().function();
+    }
+
     private void runtimeError(String msg) {
-        System.out.println("运行时错误: " + msg);
+        runtimeError(new Error("运行时错误: " + msg));
+    }
+
+    private void runtimeError(Error e) {
+        error = e;
         errorHappened = true;
-        
+    }
+
+    Obj constant(int index) {
+        Obj c = constants[index];
+        if (c == null) {
+            c = program.constant(index);
+            constants[index] = c;
+        }
+        return c;
     }
 
     public void pushClosure(int index, int freeCount) {
-        Obj cf = constants.get(index);
+        Obj cf = constant(index);
         CompiledFunction mcf = (CompiledFunction) cf;
         ArrayList<Obj> frees = new ArrayList<>();
         for (int i = 0; i < freeCount; i++) {
@@ -205,49 +350,92 @@ public class Vm {
         stack.push(mc);
     }
 
-    private void executeSetArray() {
+    private void executeSetArray(int ip) {
         Obj index = stack.pop();
         Obj arr = stack.pop();
         Obj value = stack.pop();
-        if (arr.type() == ObjType.ARRAY) {
-            Array array = (Array) arr;
 
-            if (index.type() != ObjType.INTEGER) {
-                runtimeError("索引必须是整数类型，当前类型为" + index.type() + ": " + index.inspect());
+        byte kind = inlineCache[ip];
+        if (kind == IC_EMPTY || !cacheHit(kind, arr, index)) {
+            kind = siteKind(arr, index);
+            if (kind == IC_EMPTY) {
+                executeSetArrayError(arr, index);
                 return;
             }
-
-            Int intIndex = (Int) index;
-            array.getElements().set(intIndex.getValue(), value);
-            stack.push(array);
+            inlineCache[ip] = kind;
         }
 
-        else if (arr.type() == ObjType.HASH) {
-            Hash hash = (Hash) arr;
-            HashKey hashKey = new HashKey();
-            if (index.type() == ObjType.STRING) {
-                Str key = (Str) index;
-                hashKey = key.hashKey();
-            }
-            else if (index.type() == ObjType.INTEGER) {
-                Int key = (Int) index;
-                hashKey = key.hashKey();
-            }
-            else if (index.type() == ObjType.BOOLEAN) {
-                Bool key = (Bool) index;
-                hashKey = key.hashKey();
-            }else {
-                runtimeError("索引必须是整数、字符串、布尔类型，当前类型为" + index.type() + ": " + index.inspect());
+        if (kind == IC_ARRAY_INT) {
+            Array array = (Array) arr;
+            int i = ((Int) index).getValue();
+            if (i < 0 || i >= array.length()) {
+                runtimeError("索引越界");
                 return;
             }
-            hash.put(hashKey, new HashPair(index, value));
-            stack.push(hash);
+            if (array.isIntArray() && value.getClass() == Int.class) {
+                array.setInt(i, ((Int) value).getValue());
+            } else {
+                array.set(i, value);
+            }
+            stack.push(array);
+            return;
+        }
+
+        Hash hash = (Hash) arr;
+        hash.put(index, value);
+        stack.push(hash);
+    }
+
+    private void executeSetArrayError(Obj arr, Obj index) {
+        if (arr.type() == ObjType.ARRAY) {
+            runtimeError("索引必须是整数类型，当前类型为" + index.type() + ": " + index.inspect());
+        } else if (arr.type() == ObjType.HASH) {
+            runtimeError("索引必须是整数、字符串、布尔类型，当前类型为" + index.type() + ": " + index.inspect());
         } else {
             runtimeError("非数组或哈希表类型: " + arr.type() + ": " + arr.inspect());
-            return;
         }
     }
 
+    /**
+     * 判断本次访问的接收者和索引类型是否与该指令位置上次缓存的组合一致
+     */
+    private static boolean cacheHit(byte kind, Obj left, Obj index) {
+        switch (kind) {
+            case IC_ARRAY_INT:
+                return left.getClass() == Array.class && index.getClass() == Int.class;
+            case IC_HASH_INT:
+                return left.getClass() == Hash.class && index.getClass() == Int.class;
+            case IC_HASH_STR:
+                return left.getClass() == Hash.class && index.getClass() == Str.class;
+            case IC_HASH_BOOL:
+                return left.getClass() == Hash.class && index.getClass() == Bool.class;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 未命中缓存时重新判断接收者和索引的类型组合，不支持的组合返回 IC_EMPTY
+     */
+    private static byte siteKind(Obj left, Obj index) {
+        if (left.type() == ObjType.ARRAY) {
+            return index.type() == ObjType.INTEGER ? IC_ARRAY_INT : IC_EMPTY;
+        }
+        if (left.type() == ObjType.HASH) {
+            switch (index.type()) {
+                case INTEGER:
+                    return IC_HASH_INT;
+                case STRING:
+                    return IC_HASH_STR;
+                case BOOLEAN:
+                    return IC_HASH_BOOL;
+                default:
+                    return IC_EMPTY;
+            }
+        }
+        return IC_EMPTY;
+    }
+
     private void executeClosure(int index, int freeCount) {
         pushClosure(index, freeCount);
     }
@@ -273,12 +461,24 @@ public class Vm {
         else if(cf.type() == ObjType.Closure) {
 
             Closure closure = (Closure) cf;
-            if (closure.function().paramCount() != argc) {
-                runtimeError("参数数量不匹配: 需要" + closure.function().paramCount() + " ，提供了 " + argc);
+            if (!checkCall(closure, argc)) {
                 return;
             }
-            Frame frame = new Frame(stack.sp() - closure.function().paramCount(), -is.lengthOf(Opcode.Call), closure);
-            frames.push(frame);        
+            JitCode jc = tierUp(closure.function());
+            if (jc != null) {
+                int base = stack.sp() - argc;
+                Obj a0 = argc > 0 ? stack.get(base) : null;
+                Obj a1 = argc > 1 ? stack.get(base + 1) : null;
+                Obj a2 = argc > 2 ? stack.get(base + 2) : null;
+                Obj a3 = argc > 3 ? stack.get(base + 3) : null;
+                stack.setSp(base - 1);
+                Obj result = invoke(jc, closure, a0, a1, a2, a3);
+                if (result != null) {
+                    stack.push(result);
+                }
+                return;
+            }
+            pushFrame(stack.sp() - closure.function().paramCount(), -CALL_LEN, closure);
         }
         else {
             runtimeError("不支持调用非函数类型: " + cf.type() + ": " + cf.inspect());
@@ -287,117 +487,255 @@ public class Vm {
         
     }
 
-    private void executeJump(Opcode code) {
-        int offset = readSignedInt(curFrame().ip() + 1, 2);
+    private boolean checkCall(Closure closure, int argc) {
+        if (closure.function().paramCount() != argc) {
+            runtimeError("参数数量不匹配: 需要" + closure.function().paramCount() + " ，提供了 " + argc);
+            return false;
+        }
+        if (frameIndex + jitDepth + 1 >= frames.length) {
+            runtimeError("调用栈溢出: 超过最大调用深度 " + frames.length);
+            return false;
+        }
+        return true;
+    }
 
-        if (code == Opcode.Jf) {
-            Obj obj = stack.pop();
+    /**
+     * 分层执行策略，每次调用函数时记录调用次数并按热度提升执行层级：
+     * 解释执行，热度达到 {@link #PROFILE_THRESHOLD} 后解释执行并收集类型信息，
+     * 再达到 {@link Jit#THRESHOLD} 后按类型信息即时编译，下一次调用开始执行编译的代码。
+     * 收集类型信息的层级只记录类型，解释执行的指令不变。退优化后回到收集类型信息的层级，退优化超过 {@link Jit#MAX_DEOPTS} 次后只解释执行。
+     * @return 可以执行的编译代码，没有编译或编译代码嵌套过深时返回 null
+     */
+    private JitCode tierUp(CompiledFunction fn) {
+        TierState state = TierState.of(fn);
+        state.countCall();
+        switch (state.tier()) {
+            case INTERPRETER:
+                if (!state.jitDisabled() && state.hotness() >= PROFILE_THRESHOLD) {
+                    state.startProfiling();
+                }
+                return null;
+            case PROFILING:
+                if (Jit.THRESHOLD <= 0 || state.hotness() < Jit.THRESHOLD) {
+                    return null;
+                }
+                JitCode jc = Jit.compile(fn, this);
+                if (jc == null) {
+                    state.disableJit();
+                    return null;
+                }
+                state.setJitCode(jc);
+                break;
+            default:
+                break;
+        }
+        return jitDepth < Jit.MAX_DEPTH ? state.jitCode() : null;
+    }
 
-            if (obj.type() == ObjType.BOOLEAN) {
-                if (((Bool) obj).getValue() ) return;
-                curFrame().inc(offset);
-                return;
-            }
+    private Obj invoke(JitCode jc, Closure closure, Obj a0, Obj a1, Obj a2, Obj a3) {
+        jitDepth++;
+        try {
+            return jc.call(this, closure, a0, a1, a2, a3);
+        } finally {
+            jitDepth--;
+        }
+    }
 
-            if (obj.type() == ObjType.NULL) {
-                curFrame().inc(offset);
-                return;
+    /**
+     * 在虚拟机栈上为 closure 建立帧，从 ip 处解释执行到它返回
+     * @param slots 局部变量和操作数栈的内容
+     */
+    private Obj interpret(Closure closure, int ip, Obj... slots) {
+        stack.push(closure);
+        int base = stack.sp();
+        for (Obj slot : slots) {
+            stack.push(slot);
+        }
+        pushFrame(base, ip, closure);
+        return execute(frameIndex);
+    }
+
+    /*
+     * 以下方法由编译的代码调用
+     */
+
+    Obj jitGetGlobal(int index) {
+        return stack.get(index);
+    }
+
+    void jitSetGlobal(int index, Obj value) {
+        stack.set(index, value);
+    }
+
+    Obj jitGetBuiltin(int index) {
+        return builtins.get(index);
+    }
+
+    /**
+     * 编译的代码中的 Call 指令，参数少于 4 个时其余参数为 null
+     * @return 调用结果，发生错误时返回 null
+     */
+    Obj jitCall(Obj callee, int argc, Obj a0, Obj a1, Obj a2, Obj a3) {
+        if (callee.type() == ObjType.BUILTIN) {
+            ArrayList<Obj> args = new ArrayList<>();
+            Obj[] all = {a0, a1, a2, a3};
+            for (int i = 0; i < argc; i++) {
+                args.add(all[i]);
             }
+            return ((BuiltinFunc) callee).exec(args);
+        }
+        if (callee.type() != ObjType.Closure) {
+            runtimeError("不支持调用非函数类型: " + callee.type() + ": " + callee.inspect());
+            return null;
+        }
+        Closure closure = (Closure) callee;
+        if (!checkCall(closure, argc)) {
+            return null;
+        }
+        JitCode jc = tierUp(closure.function());
+        if (jc != null) {
+            return invoke(jc, closure, a0, a1, a2, a3);
+        }
+        switch (argc) {
+            case 0:
+                return interpret(closure, 0);
+            case 1:
+                return interpret(closure, 0, a0);
+            case 2:
+                return interpret(closure, 0, a0, a1);
+            case 3:
+                return interpret(closure, 0, a0, a1, a2);
+            default:
+                return interpret(closure, 0, a0, a1, a2, a3);
+        }
+    }
 
-            
-            runtimeError("跳转依据为非布尔或空类型: " + obj.type() + ": " + obj.inspect());
+    /**
+     * 编译的代码在 ip 处类型守卫失败，从这条指令开始改为解释执行
+     * @param slots 局部变量和操作数栈的内容
+     * @return 函数的返回值，发生错误时返回 null
+     */
+    Obj jitDeopt(Closure closure, int ip, Obj[] slots) {
+        TierState state = TierState.of(closure.function());
+        state.deoptimize();
+        if (state.deopts() > Jit.MAX_DEOPTS) {
+            state.disableJit();
+        }
+        return interpret(closure, ip, slots);
+    }
+
+    /**
+     * 类型信息显示操作数不全是整数的算术和比较指令，编译的代码调用此方法按解释器的规则计算
+     * @return 计算结果，发生错误时返回 null
+     */
+    Obj jitOperator(int op, Obj left, Obj right) {
+        Opcode code = InstructionSet.opcodeOf(op);
+        switch (code) {
+            case Add: case Sub: case Mul: case Div:
+                executeInfix(code, left, right);
+                break;
+            default:
+                executeComparison(code, left, right);
+                break;
+        }
+        return errorHappened ? null : stack.pop();
+    }
+
+    private void executeJump(Opcode code) {
+        int offset = readInt16(curFrame().ip() + 1);
+
+        if (code == Opcode.Jf) {
+            jumpUnless(stack.pop(), offset);
             return;
         }
 
         if (code == Opcode.J) {
+            if (offset < 0) {
+                curFrame().state().countBackEdge();
+            }
+            curFrame().inc(offset);
+        }
+    }
+
+    private void jumpUnless(Obj obj, int offset) {
+        if (obj.type() == ObjType.BOOLEAN) {
+            if (((Bool) obj).getValue() ) return;
+            curFrame().inc(offset);
+            return;
+        }
+
+        if (obj.type() == ObjType.NULL) {
             curFrame().inc(offset);
+            return;
         }
+
+        
+        runtimeError("跳转依据为非布尔或空类型: " + obj.type() + ": " + obj.inspect());
     }
 
-    private void executeIndex() {
+    private void executeIndex(int ip) {
         Obj index = stack.pop();
         Obj left = stack.pop();
 
-        if (left.type() == ObjType.ARRAY && index.type() == ObjType.INTEGER) {
+        byte kind = inlineCache[ip];
+        if (kind == IC_EMPTY || !cacheHit(kind, left, index)) {
+            kind = siteKind(left, index);
+            if (kind == IC_EMPTY) {
+                executeIndexError(left, index);
+                return;
+            }
+            inlineCache[ip] = kind;
+        }
+
+        if (kind == IC_ARRAY_INT) {
             Array array = (Array) left;
             int i = ((Int) index).getValue();
-            if (i < 0 || i >= array.getElements().size()) {
+            if (i < 0 || i >= array.length()) {
                 runtimeError("索引越界");
                 return;
             }
-            stack.push(array.getElements().get(i));
+            stack.push(array.isIntArray() ? Int.valueOf(array.getInt(i)) : array.get(i));
             return;
         }
 
-        if (left.type() == ObjType.HASH) {
-            Hash hash = (Hash) left;
-            HashKey hashKey = new HashKey();
-            if (index.type() == ObjType.STRING) {
-                Str key = (Str) index;
-                hashKey = key.hashKey();
-            }
-            else if (index.type() == ObjType.INTEGER) {
-                Int key = (Int) index;
-                hashKey = key.hashKey();
-            }
-            else if (index.type() == ObjType.BOOLEAN) {
-                Bool key = (Bool) index;
-                hashKey = key.hashKey();
-            }
-            else {
-                runtimeError("索引必须是整数、字符串、布尔类型，当前类型为" + index.type() + ": " + index.inspect());
-                return;
-            }
-            HashPair value = hash.get(hashKey);
-            if (value == null) {
-                runtimeError("哈希表中找不到键: " + index.inspect());
-                return;
-            }
-            stack.push(value.getValue());
+        Obj value = ((Hash) left).get(index);
+        if (value == null) {
+            runtimeError("哈希表中找不到键: " + index.inspect());
             return;
         }
+        stack.push(value);
+    }
 
+    private void executeIndexError(Obj left, Obj index) {
+        if (left.type() == ObjType.HASH) {
+            runtimeError("索引必须是整数、字符串、布尔类型，当前类型为" + index.type() + ": " + index.inspect());
+            return;
+        }
         runtimeError("不支持索引操作: " + left.type() + ": " + left.inspect());
-
     }
 
     private void executeHash(int size) {
-        HashMap<HashKey,HashPair> hm = new HashMap<>();
-        HashKey hk;
-        HashPair hp;
+        Hash hash = new Hash(size);
         Obj key;
         Obj val;
         for (int i = 0; i< size;i++) {
             key = stack.pop();
             val = stack.pop();
 
-            switch (key.type()) {
-                case INTEGER:
-                    hk = new HashKey(ObjType.INTEGER, ((Int)key).getValue());
-                    break;
-                case BOOLEAN:
-                    hk = new HashKey(ObjType.BOOLEAN, ((Bool)key).getValue() ? 1 : 0);
-                    break;
-                case STRING:
-                    hk = new HashKey(ObjType.STRING, ((Str)key).getValue().hashCode());
-                    break;
-                default:
-                    runtimeError("不支持的键类型: " + key.type() + ": " + key.inspect());
-                    return;
+            if (!Hash.isHashable(key)) {
+                runtimeError("不支持的键类型: " + key.type() + ": " + key.inspect());
+                return;
             }
-
-            hp = new HashPair(key, val);
-
-            hm.put(hk, hp);
+            hash.put(key, val);
         }
 
-        stack.push(new Hash(hm));
+        stack.push(hash);
     }
 
     private void executeArray(int size) {
-        ArrayList<Obj> array = new ArrayList<>();
+        Obj[] array = new Obj[size];
         for (int i = 0; i < size; i++) {
-            array.add(stack.pop());
+            array[i] = stack.pop();
         }
         Array arr = new Array(array);
         stack.push(arr);
@@ -406,7 +744,10 @@ public class Vm {
     private void executeComparison(Opcode code) {
         Obj left = stack.pop();
         Obj right = stack.pop();
+        executeComparison(code, left, right);
+    }
 
+    private void executeComparison(Opcode code, Obj left, Obj right) {
         if (left.type() == ObjType.INTEGER && right.type() == ObjType.INTEGER) {
             executeComparisonInteger(code, (Int) left, (Int) right);
             return;
@@ -433,10 +774,10 @@ public class Vm {
     private void executeComparisonNull(Opcode code, NULL left, NULL right) {
         switch (code) {
             case Eq:
-                stack.push(new Bool(true));
+                stack.push(Bool.TRUE);
                 break;
             case Ne:
-                stack.push(new Bool(false));
+                stack.push(Bool.FALSE);
                 break;
             default:
                 runtimeError("不支持的NULL比较操作: " + code.toString());
@@ -445,12 +786,14 @@ public class Vm {
     }
 
     private void executeComparisonString(Opcode code, Str left, Str right) {
+        // 字符串常量在常量池中去重，两个常量相等时通常是同一个对象
+        boolean eq = left == right || left.getValue().equals(right.getValue());
         switch (code) {
             case Eq:
-                stack.push(new Bool(left.getValue().equals(right.getValue())));
+                stack.push(Bool.valueOf(eq));
                 break;
             case Ne:
-                stack.push(new Bool(!left.getValue().equals(right.getValue())));
+                stack.push(Bool.valueOf(!eq));
                 break;
             default:
                 runtimeError("不支持的字符串比较操作: " + code.toString());
@@ -461,10 +804,10 @@ public class Vm {
     private void executeComparisonBoolean(Opcode code, Bool left, Bool right) {
         switch (code) {
             case Eq:
-                stack.push(new Bool(left.getValue() == right.getValue()));
+                stack.push(Bool.valueOf(left.getValue() == right.getValue()));
                 break;
             case Ne:
-                stack.push(new Bool(left.getValue() != right.getValue()));
+                stack.push(Bool.valueOf(left.getValue() != right.getValue()));
                 break;
             default:
                 runtimeError("不支持的布尔比较操作: " + code.toString());
@@ -475,22 +818,22 @@ public class Vm {
     private void executeComparisonInteger(Opcode code, Int left, Int right) {
         switch (code) {
             case Eq:
-                stack.push(new Bool(left.getValue() == right.getValue()));
+                stack.push(Bool.valueOf(left.getValue() == right.getValue()));
                 break;
             case Ne:
-                stack.push(new Bool(left.getValue() != right.getValue()));
+                stack.push(Bool.valueOf(left.getValue() != right.getValue()));
                 break;
             case Gt:
-                stack.push(new Bool(left.getValue() > right.getValue()));
+                stack.push(Bool.valueOf(left.getValue() > right.getValue()));
                 break;
             case Ge:
-                stack.push(new Bool(left.getValue() >= right.getValue()));
+                stack.push(Bool.valueOf(left.getValue() >= right.getValue()));
                 break;
             case Lt:
-                stack.push(new Bool(left.getValue() < right.getValue()));
+                stack.push(Bool.valueOf(left.getValue() < right.getValue()));
                 break;
             case Le:
-                stack.push(new Bool(left.getValue() <= right.getValue()));
+                stack.push(Bool.valueOf(left.getValue() <= right.getValue()));
                 break;
             default:
                 runtimeError("不支持的整数比较操作: " + code.toString());
@@ -511,7 +854,7 @@ public class Vm {
         }
 
         if (obj.type() == ObjType.NULL && code == Opcode.Not) {
-            stack.push(new Bool(true));
+            stack.push(Bool.TRUE);
             return;
         }
 
@@ -521,7 +864,7 @@ public class Vm {
     private void executePrefixInteger(Opcode code, Int obj) {
         switch (code) {
             case Neg:
-                stack.push(new Int(-obj.getValue()));
+                stack.push(Int.valueOf(-obj.getValue()));
                 break;
             default:
                 runtimeError("不支持的整数前缀操作: " + code + ": " + obj.inspect());
@@ -532,7 +875,7 @@ public class Vm {
     private void executePrefixBoolean(Opcode code, Bool obj) {
         switch (code) {
             case Not:
-                stack.push(new Bool(!obj.getValue()));
+                stack.push(Bool.valueOf(!obj.getValue()));
                 break;
             default:
                 runtimeError("不支持的布尔前缀操作: " + code + ": " + obj.inspect());
@@ -543,7 +886,10 @@ public class Vm {
     private void executeInfix(Opcode code) {
         Obj left = stack.pop();
         Obj right = stack.pop();
+        executeInfix(code, left, right);
+    }
 
+    private void executeInfix(Opcode code, Obj left, Obj right) {
         if (left.type() == ObjType.INTEGER && right.type() == ObjType.INTEGER) {
             executeInfixInteger(code, (Int) left, (Int) right);
             return;
@@ -560,20 +906,20 @@ public class Vm {
     private void executeInfixInteger(Opcode code, Int left, Int right) {
         switch (code) {
             case Add:
-                stack.push(new Int(left.getValue() + right.getValue()));
+                stack.push(Int.valueOf(left.getValue() + right.getValue()));
                 break;
             case Sub:
-                stack.push(new Int(left.getValue() - right.getValue()));
+                stack.push(Int.valueOf(left.getValue() - right.getValue()));
                 break;
             case Mul:
-                stack.push(new Int(left.getValue() * right.getValue()));
+                stack.push(Int.valueOf(left.getValue() * right.getValue()));
                 break;
             case Div:
                 if (right.getValue() == 0) {
                     runtimeError("除数为0");
                     return;
                 }
-                stack.push(new Int(left.getValue() / right.getValue()));
+                stack.push(Int.valueOf(left.getValue() / right.getValue()));
                 break;
             default:
                 runtimeError("不支持的整数中缀操作: " + code + ": " + left.inspect() + "和" + right.inspect());
@@ -584,7 +930,7 @@ public class Vm {
     private void executeInfixString(Opcode code, Str left, Str right) {
         switch (code) {
             case Add:
-                stack.push(new Str(left.getValue() + right.getValue()));
+                stack.push(Str.concat(left, right));
                 break;
 
             default:
@@ -593,37 +939,48 @@ public class Vm {
         }
     }
 
-    private ArrayList<Byte> curInstructions() {
-        return curFrame().closure().function().getInstructions();
+    private void pushFrame(int base, int ip, Closure closure) {
+        frameIndex++;
+        Frame f = frames[frameIndex];
+        if (f == null) {
+            f = new Frame(base, ip, closure);
+            frames[frameIndex] = f;
+        } else {
+            f.reset(base, ip, closure);
+        }
+        frame = f;
+        instructions = f.instructions();
+        inlineCache = f.inlineCache();
+        profile = f.profile();
     }
 
-    private Frame curFrame() {
-        return frames.peek();
+    /**
+     * 弹出当前帧，返回的 Frame 在下一次 pushFrame 之前保持有效
+     */
+    private Frame popFrame() {
+        Frame f = frames[frameIndex];
+        frameIndex--;
+        frame = frames[frameIndex];
+        instructions = frame.instructions();
+        inlineCache = frame.inlineCache();
+        profile = frame.profile();
+        return f;
     }
 
-    private int readInt(int startip, int len) {
-        int num = 0;
-        for (int i = 0; i < len; i++) {
-            int b = curInstructions().get(i + startip) & 0xFF;
-            num = (num << 8) + b;
-        }
-        return num;
+    private Frame curFrame() {
+        return frame;
     }
 
-    private int readSignedInt(int startip, int len) {
-        ArrayList<Byte> instructions = curInstructions();
-        int result = 0;
-
-        for (int i = 0; i < len; i++) {
-            byte currentByte = instructions.get(startip + i);
-            result = (result << 8) | (currentByte & 0xFF);
-        }
+    private int readUint8(int pos) {
+        return instructions[pos] & 0xFF;
+    }
 
-        if ((result & (1 << (len * 8 - 1))) != 0) {
-            result -= (1 << (len * 8));
-        }
+    private int readUint16(int pos) {
+        return ((instructions[pos] & 0xFF) << 8) | (instructions[pos + 1] & 0xFF);
+    }
 
-        return result;
+    private int readInt16(int pos) {
+        return (short) readUint16(pos);
     }
 
 
@@ -1,42 +1,52 @@
 package core.vm;
 
+import core.env.Error;
+import core.env.NULL;
 import core.env.Obj;
 
+/**
+ * 虚拟机操作数栈
+ * <p> 栈从 initialSize 开始按需翻倍扩容，最多扩到 maxSize。
+ * 越界、溢出等错误不会抛异常也不会打印，而是记录为 {@link Error}，
+ * 由 Vm 在每条指令执行完后通过 {@link #error()} 检查并终止运行。</p>
+ */
 public class VmStack {
+    public static final int DEFAULT_INITIAL_SIZE = 1024;
+    public static final int DEFAULT_MAX_SIZE = 1 << 20;
+
     private int sp = 0;
     private Obj[] stack;
     private int maxSize;
+    private Error error;
+
     public VmStack(int size) {
-        stack = new Obj[size];
-        maxSize = size;
+        this(size, Math.max(size, DEFAULT_MAX_SIZE));
+    }
+
+    public VmStack(int initialSize, int maxSize) {
+        stack = new Obj[Math.min(initialSize, maxSize)];
+        this.maxSize = maxSize;
     }
 
     public Obj peek() {
         if (sp == 0) {
-            System.out.println("stack underflow");
-            return null;
+            return fail("stack underflow");
         }
         return stack[sp - 1];
     }
 
-    
-
     public void push(Obj obj) {
-        if (sp == maxSize){
-            System.out.println("stack overflow");
+        if (sp == stack.length && !grow(sp + 1)) {
             return;
         }
-        stack[sp] = obj;
-        sp += 1;
+        stack[sp++] = obj;
     }
 
     public Obj pop() {
         if (sp == 0) {
-            System.out.println("stack underflow");
-            return null;
+            return fail("stack underflow");
         }
-        sp -= 1;
-        return stack[sp];
+        return stack[--sp];
     }
 
     public int size() {
@@ -45,15 +55,14 @@ public class VmStack {
 
     public Obj get(int index) {
         if (index >= sp || index < 0) {
-            System.out.println("invalid index");
-            return null;
+            return fail("invalid stack index: " + index);
         }
         return stack[index];
     }
 
     public void set(int index, Obj obj) {
         if (index >= sp || index < 0) {
-            System.out.println("invalid index");
+            fail("invalid stack index: " + index);
             return;
         }
         stack[index] = obj;
@@ -65,11 +74,42 @@ public class VmStack {
 
     public void setSp(int sp) {
         if (sp < 0) {
-            System.out.println("invalid sp");
+            fail("invalid sp: " + sp);
+            return;
+        }
+        if (sp > stack.length && !grow(sp)) {
             return;
         }
         this.sp = sp;
     }
 
-    
+    /**
+     * 运行过程中第一次出现的栈错误，没有错误时为 null
+     * @return 栈错误
+     */
+    public Error error() {
+        return error;
+    }
+
+    private boolean grow(int required) {
+        if (required > maxSize) {
+            fail("stack overflow: more than " + maxSize + " slots");
+            return false;
+        }
+        int capacity = stack.length;
+        while (capacity < required) {
+            capacity = (int) Math.min((long) capacity * 2, maxSize);
+        }
+        Obj[] grown = new Obj[capacity];
+        System.arraycopy(stack, 0, grown, 0, sp);
+        stack = grown;
+        return true;
+    }
+
+    private Obj fail(String msg) {
+        if (error == null) {
+            error = new Error(msg);
+        }
+        return NULL.INSTANCE;
+    }
 }